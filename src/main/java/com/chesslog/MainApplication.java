@@ -11,6 +11,8 @@ import java.io.IOException;
 
 public class MainApplication extends Application {
 
+    private MainController controller;
+
     @Override
     public void start(Stage stage) throws IOException {
 
@@ -18,6 +20,7 @@ public class MainApplication extends Application {
 
         FXMLLoader fxmlLoader = new FXMLLoader(MainApplication.class.getResource("/com/chesslog/MainView.fxml"));
         Parent root = fxmlLoader.load();
+        controller = fxmlLoader.getController();
 
         Scene scene = new Scene(root, 1000, 750);
 
@@ -26,6 +29,14 @@ public class MainApplication extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        if (controller != null) {
+            controller.shutdown();
+        }
+        DatabaseService.shutdown();
+    }
+
     public static void main(String[] args) {
         launch();
     }
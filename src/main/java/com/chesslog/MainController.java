@@ -1,8 +1,26 @@
 package com.chesslog;
 
 import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.BookMove;
+import com.chesslog.service.AnalysisBackend;
+import com.chesslog.service.AnalysisCache;
+import com.chesslog.service.AnalysisScheduler;
+import com.chesslog.service.ArchiveSyncService;
+import com.chesslog.service.CachedAnalysisBackend;
 import com.chesslog.service.ChessComApiService;
+import com.chesslog.service.CollectionAnalysisJob;
 import com.chesslog.model.ChessGame;
+import com.chesslog.model.ExplorerMove;
+import com.chesslog.model.MoveClassification;
+import com.chesslog.model.PlyEvaluation;
+import com.chesslog.model.SearchLimit;
+import com.chesslog.service.GameAnalysisService;
+import com.chesslog.service.LocalStockfishService;
+import com.chesslog.service.MoveCodec;
+import com.chesslog.service.PersistenceQueue;
+import com.chesslog.service.PolyglotBook;
+import com.chesslog.service.PositionNavigator;
+import com.chesslog.service.SanConverter;
 import com.chesslog.service.StockfishApiService;
 import com.chesslog.service.DatabaseService;
 import com.github.bhlangonijr.chesslib.Board;
@@ -11,6 +29,7 @@ import com.github.bhlangonijr.chesslib.move.Move;
 import com.github.bhlangonijr.chesslib.Square;
 import com.github.bhlangonijr.chesslib.Piece;
 import com.github.bhlangonijr.chesslib.Side;
+import javafx.animation.PauseTransition;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
@@ -26,8 +45,10 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
+import javafx.util.Duration;
 import javafx.util.Pair;
 
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
@@ -48,18 +69,42 @@ public class MainController {
     @FXML
     private ToggleButton stockfishToggle;
 
+    @FXML
+    private ChoiceBox<SearchLimit> analysisLimitChoice;
+
+    @FXML
+    private ChoiceBox<Integer> multiPvChoice;
+
     @FXML
     private Label depthLabel;
 
     @FXML
     private ListView<AnalysisLine> engineMovesListView;
 
+    @FXML
+    private Label bookMovesLabel;
+
+    @FXML
+    private Button analyzeGameButton;
+
+    @FXML
+    private ProgressBar gameAnalysisProgressBar;
+
+    @FXML
+    private Label gameAnalysisSummaryLabel;
+
     @FXML
     private TextFlow moveListArea;
 
     @FXML
     private TextArea gameNoteArea;
 
+    @FXML
+    private TitledPane explorerPane;
+
+    @FXML
+    private TableView<ExplorerMove> explorerTable;
+
     @FXML private Button firstMoveButton;
     @FXML private Button prevMoveButton;
     @FXML private Button nextMoveButton;
@@ -71,12 +116,29 @@ public class MainController {
 
     @FXML private Button addAnalysisButton;
 
+    @FXML private Button findPositionButton;
+
     @FXML
     private TextField collectionSearchField;
 
     @FXML
     private TableView<ChessGame> savedGamesTable;
 
+    @FXML
+    private Button analyzeCollectionButton;
+
+    @FXML
+    private Button stopCollectionButton;
+
+    @FXML
+    private ChoiceBox<Integer> cpuShareChoice;
+
+    @FXML
+    private ProgressBar collectionAnalysisProgressBar;
+
+    @FXML
+    private Label collectionAnalysisStatusLabel;
+
     @FXML
     private TextField usernameField;
 
@@ -86,6 +148,18 @@ public class MainController {
     @FXML
     private TableView<ChessGame> importedGamesTable;
 
+    @FXML
+    private CheckBox fullHistoryCheckBox;
+
+    @FXML
+    private Button syncAccountButton;
+
+    @FXML
+    private ProgressBar importProgressBar;
+
+    @FXML
+    private Label importStatusLabel;
+
     @FXML private Label blackPlayerIcon;
     @FXML private Label blackPlayerNameLabel;
     @FXML private Label whitePlayerIcon;
@@ -94,16 +168,44 @@ public class MainController {
 
     private final ChessComApiService chessComApiService = new ChessComApiService();
     private final DatabaseService databaseService = new DatabaseService();
-    private final StockfishApiService stockfishApiService = new StockfishApiService();
+    // Every database call from the UI goes through here, so the FX thread never waits on SQLite
+    private final PersistenceQueue persistenceQueue =
+            new PersistenceQueue(databaseService, javafx.application.Platform::runLater);
+    private final ArchiveSyncService archiveSyncService = new ArchiveSyncService(chessComApiService, databaseService);
+    private final AnalysisCache analysisCache = new AnalysisCache();
+    private final AnalysisBackend engineBackend = createEngineBackend();
+    private final AnalysisBackend analysisBackend = new CachedAnalysisBackend(engineBackend, analysisCache);
+    private final CollectionAnalysisJob collectionAnalysisJob =
+            new CollectionAnalysisJob(engineBackend, analysisCache, databaseService);
+    private final PolyglotBook openingBook = PolyglotBook.locate().orElse(null);
+    private final GameAnalysisService gameAnalysisService = new GameAnalysisService(analysisBackend);
+    private final AnalysisScheduler analysisScheduler =
+            new AnalysisScheduler(analysisBackend, javafx.application.Platform::runLater);
     private final BooleanProperty isStockfishRunning = new SimpleBooleanProperty(false);
+    private final ObservableList<AnalysisLine> engineLines = FXCollections.observableArrayList();
 
     private ChessGame currentlyLoadedGame;
     private Board board;
     private MoveList moveList;
     private int currentMoveIndex = -1;
+    private PositionNavigator navigator;
     private Chessboard chessboard;
     private List<Text> moveTextNodes = new ArrayList<>();
     private boolean isModified = false;
+    // Counts moves made on the board, so a save can tell whether the game changed while it ran
+    private int editCount = 0;
+    private List<PlyEvaluation> gameAnalysis = new ArrayList<>();
+    private Thread gameAnalysisThread;
+
+    private static final int SAVED_GAMES_PAGE_SIZE = 200;
+    private final PauseTransition searchDebounce = new PauseTransition(Duration.millis(200));
+    private String savedGamesQuery = "";
+    private int savedGamesGeneration;
+    private boolean savedGamesHasMore;
+    private boolean savedGamesLoading;
+    private int explorerGeneration;
+    // Position the explorer table's moves were played from
+    private String explorerFen;
 
     @FXML
     public void initialize() {
@@ -113,6 +215,22 @@ public class MainController {
         if (addAnalysisButton != null) {
             addAnalysisButton.setOnAction(e -> handleAddAnalysis());
         }
+        if (findPositionButton != null) {
+            findPositionButton.setTooltip(new Tooltip("List saved games that reached the position on the board"));
+            findPositionButton.setOnAction(e -> handleFindPosition());
+        }
+        if (syncAccountButton != null) {
+            syncAccountButton.setOnAction(e -> handleSyncAccount());
+        }
+        if (analyzeCollectionButton != null) {
+            analyzeCollectionButton.setOnAction(e -> handleAnalyzeCollection());
+        }
+        if (stopCollectionButton != null) {
+            stopCollectionButton.setOnAction(e -> collectionAnalysisJob.stop());
+            stopCollectionButton.setDisable(true);
+        }
+        setupCpuShareChoice();
+        collectionAnalysisJob.setOpeningBook(openingBook);
         if (saveStarButton != null) {
             saveStarButton.setOnAction(e -> handleSaveGame());
             saveStarButton.selectedProperty().addListener((obs, oldVal, newVal) -> {
@@ -138,6 +256,10 @@ public class MainController {
             lastMoveButton.setOnAction(e -> handleLastMove());
         }
 
+        if (analyzeGameButton != null) {
+            analyzeGameButton.setOnAction(e -> handleAnalyzeGame());
+        }
+
         if (flipBoardButton != null) {
             flipBoardButton.setOnAction(e -> {
                 if (chessboard != null) {
@@ -166,6 +288,7 @@ public class MainController {
         clearPlayerInfo();
         setupImportedGamesTable();
         setupSavedGamesTable();
+        setupCollectionSearch();
         loadSavedGames();
         updateSaveStarState();
         updateNavigationButtonsState();
@@ -182,13 +305,51 @@ public class MainController {
         }
 
         setupEngineMovesListView();
+        setupAnalysisLimitChoice();
+        setupMultiPvChoice();
+        setupExplorerTable();
     }
     
+    private static AnalysisBackend createEngineBackend() {
+        Optional<Path> enginePath = LocalStockfishService.locateEngine();
+        if (enginePath.isPresent()) {
+            System.out.println("Using local Stockfish engine at " + enginePath.get());
+            return new LocalStockfishService(enginePath.get());
+        }
+        System.out.println("No local Stockfish build found, falling back to stockfish.online.");
+        return new StockfishApiService();
+    }
+
+    /**
+     * Called by the application on exit to stop background engines.
+     */
+    public void shutdown() {
+        analysisScheduler.shutdown();
+        collectionAnalysisJob.stop();
+        chessComApiService.shutdown();
+        if (openingBook != null) {
+            try {
+                openingBook.close();
+            } catch (java.io.IOException e) {
+                System.err.println("Failed to close opening book: " + e.getMessage());
+            }
+        }
+        if (gameAnalysisThread != null) {
+            gameAnalysisThread.interrupt();
+        }
+        analysisBackend.shutdown();
+        persistenceQueue.close();
+    }
+
     // ... (existing code for list view)
 
+    private static final double ENGINE_LINE_HEIGHT = 30;
+
     private void setupEngineMovesListView() {
         if (engineMovesListView == null) return;
 
+        engineMovesListView.setItems(engineLines);
+        engineMovesListView.setFixedCellSize(ENGINE_LINE_HEIGHT);
         engineMovesListView.setCellFactory(param -> new ListCell<>() {
             @Override
             protected void updateItem(AnalysisLine line, boolean empty) {
@@ -219,10 +380,10 @@ public class MainController {
                         }
                     }
 
-                    Label bestMoveLabel = new Label(line.getBestMove());
+                    Label bestMoveLabel = new Label(line.getDisplayBestMove());
                     bestMoveLabel.setStyle("-fx-font-weight: bold;");
 
-                    Label continuationLabel = new Label(line.getContinuation());
+                    Label continuationLabel = new Label(line.getDisplayContinuation());
                     continuationLabel.setStyle("-fx-text-fill: grey; -fx-font-size: 11px;");
                     continuationLabel.setWrapText(true);
                     HBox.setHgrow(continuationLabel, Priority.ALWAYS);
@@ -234,6 +395,31 @@ public class MainController {
         });
     }
 
+    private void setupAnalysisLimitChoice() {
+        if (analysisLimitChoice == null) return;
+
+        analysisLimitChoice.getItems().addAll(
+                SearchLimit.depth(AnalysisBackend.DEFAULT_DEPTH),
+                SearchLimit.depth(20),
+                SearchLimit.depth(25),
+                SearchLimit.time(1000),
+                SearchLimit.time(5000),
+                SearchLimit.infinite());
+        analysisLimitChoice.getSelectionModel().select(1);
+        analysisLimitChoice.valueProperty().addListener((obs, oldVal, newVal) -> updateStockfishAnalysisIfRunning());
+    }
+
+    private void setupMultiPvChoice() {
+        if (multiPvChoice == null) return;
+
+        for (int lines = 1; lines <= SearchLimit.MAX_MULTI_PV; lines++) {
+            multiPvChoice.getItems().add(lines);
+        }
+        multiPvChoice.setValue(Math.min(3, analysisBackend.getMaxMultiPv()));
+        multiPvChoice.setDisable(analysisBackend.getMaxMultiPv() <= 1);
+        multiPvChoice.valueProperty().addListener((obs, oldVal, newVal) -> updateStockfishAnalysisIfRunning());
+    }
+
     private void clearPlayerInfo() {
         if (blackPlayerIcon != null) {
             blackPlayerIcon.setText("⚫");
@@ -270,6 +456,17 @@ public class MainController {
         resultCol.setCellValueFactory(cellData -> new SimpleStringProperty(cellData.getValue().getResult()));
         importedGamesTable.getColumns().add(resultCol);
 
+        // Saved ids are held in memory, so this costs nothing per row
+        TableColumn<ChessGame, String> savedCol = new TableColumn<>("Saved");
+        savedCol.setCellValueFactory(cellData -> {
+            try {
+                return new SimpleStringProperty(databaseService.isGameSaved(cellData.getValue().getUrl()) ? "★" : "");
+            } catch (SQLException e) {
+                return new SimpleStringProperty("");
+            }
+        });
+        importedGamesTable.getColumns().add(savedCol);
+
         TableColumn<ChessGame, Void> loadButtonCol = new TableColumn<>("Load");
         loadButtonCol.setCellFactory(param -> new TableCell<>() {
             private final Button loadBtn = new Button("Load");
@@ -319,7 +516,7 @@ public class MainController {
             {
                 loadBtn.setOnAction(event -> {
                     ChessGame game = getTableView().getItems().get(getIndex());
-                    loadGame(game);
+                    loadSavedGame(game);
                 });
                 deleteBtn.setOnAction(event -> {
                     ChessGame game = getTableView().getItems().get(getIndex());
@@ -335,6 +532,17 @@ public class MainController {
             }
         });
         savedGamesTable.getColumns().add(actionsCol);
+
+        // Fetch the next page once the last row scrolls into view
+        savedGamesTable.setRowFactory(table -> new TableRow<>() {
+            @Override
+            protected void updateItem(ChessGame game, boolean empty) {
+                super.updateItem(game, empty);
+                if (!empty && getIndex() == table.getItems().size() - 1 && savedGamesHasMore && !savedGamesLoading) {
+                    loadSavedGamesPage(false);
+                }
+            }
+        });
     }
 
     private void loadGame(ChessGame gameToLoad) {
@@ -343,6 +551,8 @@ public class MainController {
         this.board = new Board();
         this.moveList = new MoveList();
         this.currentMoveIndex = -1;
+        this.navigator = new PositionNavigator(board, board.getFen(), moveList);
+        resetGameAnalysis();
 
         if (blackPlayerNameLabel != null) {
             blackPlayerNameLabel.setText(gameToLoad.getBlackPlayerName());
@@ -361,22 +571,28 @@ public class MainController {
         }
 
         try {
-            com.github.bhlangonijr.chesslib.pgn.PgnHolder pgnHolder = new com.github.bhlangonijr.chesslib.pgn.PgnHolder("dummy.pgn");
-            pgnHolder.loadPgn(pgn);
+            // Saved games carry pre-encoded moves; only fall back to parsing the PGN without them
+            MoveList decoded = MoveCodec.decode(gameToLoad.getEncodedMoves());
+            if (decoded != null) {
+                this.moveList = decoded;
+            } else {
+                com.github.bhlangonijr.chesslib.pgn.PgnHolder pgnHolder = new com.github.bhlangonijr.chesslib.pgn.PgnHolder("dummy.pgn");
+                pgnHolder.loadPgn(pgn);
 
-            if (pgnHolder.getGames().isEmpty()) {
-                showAlert("Error", "No valid games found in PGN.", Alert.AlertType.ERROR);
-                return;
-            }
+                if (pgnHolder.getGames().isEmpty()) {
+                    showAlert("Error", "No valid games found in PGN.", Alert.AlertType.ERROR);
+                    return;
+                }
 
-            com.github.bhlangonijr.chesslib.game.Game game = pgnHolder.getGames().get(0);
-            this.moveList = game.getHalfMoves();
+                com.github.bhlangonijr.chesslib.game.Game game = pgnHolder.getGames().get(0);
+                this.moveList = game.getHalfMoves();
+            }
 
             String startFen = this.moveList.getStartFen();
             if (startFen == null || startFen.isEmpty()) {
                 startFen = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
             }
-            board.loadFromFen(startFen);
+            navigator = new PositionNavigator(board, startFen, moveList);
 
             updateBoardView();
             updateSaveStarState();
@@ -425,7 +641,7 @@ public class MainController {
                 moveNumber.getStyleClass().add("move-number");
                 moveListArea.getChildren().add(moveNumber);
             } else {
-                Text move = new Text(moveToken + " ");
+                Text move = new Text(moveToken + annotationSymbol(moveIndex) + " ");
                 final int index = moveIndex;
                 move.setOnMouseClicked(event -> navigateToMove(index));
                 move.getStyleClass().add("move-text");
@@ -438,23 +654,11 @@ public class MainController {
     }
 
     private void navigateToMove(int moveIndex) {
-        if (moveList == null || moveIndex < -1 || moveIndex >= moveList.size()) {
-            // Special case for going to start of game
-            if (moveIndex == -1) {
-                board.loadFromFen(moveList.getStartFen());
-                currentMoveIndex = -1;
-                updateBoardView();
-                updateStockfishAnalysisIfRunning();
-                updateNavigationButtonsState();
-                highlightCurrentMoveInTextFlow();
-            }
+        if (moveList == null || navigator == null || moveIndex < -1 || moveIndex >= moveList.size()) {
             return;
         }
 
-        board.loadFromFen(moveList.getStartFen());
-        for (int i = 0; i <= moveIndex; i++) {
-            board.doMove(moveList.get(i));
-        }
+        navigator.goTo(moveIndex);
         currentMoveIndex = moveIndex;
         updateBoardView();
         updateStockfishAnalysisIfRunning();
@@ -466,7 +670,7 @@ public class MainController {
         for (int i = 0; i < moveTextNodes.size(); i++) {
             Text moveText = moveTextNodes.get(i);
             moveText.getStyleClass().remove("current-move");
-            moveText.setStyle(""); // Clear inline style
+            moveText.setStyle(annotationStyle(i)); // Reset to the move's base style
             if (i == currentMoveIndex) {
                 moveText.getStyleClass().add("current-move");
                 moveText.setStyle("-fx-fill: #769656; -fx-font-weight: bold;"); // Chess.com green
@@ -484,6 +688,80 @@ public class MainController {
         if (chessboard != null && board != null) {
             chessboard.setBoard(board);
         }
+        showExplorerMoves();
+    }
+
+    private void setupExplorerTable() {
+        if (explorerTable == null) {
+            return;
+        }
+        explorerTable.setPlaceholder(new Label("No saved games reach this position."));
+
+        TableColumn<ExplorerMove, String> moveCol = new TableColumn<>("Move");
+        moveCol.setCellValueFactory(cellData -> new SimpleStringProperty(explorerMoveName(cellData.getValue())));
+        explorerTable.getColumns().add(moveCol);
+
+        TableColumn<ExplorerMove, String> gamesCol = new TableColumn<>("Games");
+        gamesCol.setCellValueFactory(cellData -> new SimpleStringProperty(String.valueOf(cellData.getValue().getGames())));
+        explorerTable.getColumns().add(gamesCol);
+
+        TableColumn<ExplorerMove, String> resultsCol = new TableColumn<>("White / Draw / Black");
+        resultsCol.setCellValueFactory(cellData -> {
+            ExplorerMove move = cellData.getValue();
+            return new SimpleStringProperty(move.getWhitePercent() + "% / " + move.getDrawPercent() + "% / "
+                    + move.getBlackPercent() + "%");
+        });
+        explorerTable.getColumns().add(resultsCol);
+
+        TableColumn<ExplorerMove, String> eloCol = new TableColumn<>("Avg Elo");
+        eloCol.setCellValueFactory(cellData -> {
+            int elo = cellData.getValue().getAverageElo();
+            return new SimpleStringProperty(elo > 0 ? String.valueOf(elo) : "-");
+        });
+        explorerTable.getColumns().add(eloCol);
+
+        // Double-clicking a move plays it on the board
+        explorerTable.setRowFactory(table -> {
+            TableRow<ExplorerMove> row = new TableRow<>();
+            row.setOnMouseClicked(event -> {
+                if (event.getClickCount() == 2 && !row.isEmpty()) {
+                    String uci = row.getItem().getMove();
+                    handleUserMove(Square.valueOf(uci.substring(0, 2).toUpperCase()),
+                            Square.valueOf(uci.substring(2, 4).toUpperCase()));
+                }
+            });
+            return row;
+        });
+
+        if (explorerPane != null) {
+            explorerPane.expandedProperty().addListener((obs, wasExpanded, isExpanded) -> showExplorerMoves());
+        }
+    }
+
+    /**
+     * Shows the moves played from the board's position across the collection. Nothing is queried
+     * while the explorer is collapsed, and answers for positions already left behind are dropped.
+     */
+    private void showExplorerMoves() {
+        if (explorerTable == null || board == null || (explorerPane != null && !explorerPane.isExpanded())) {
+            return;
+        }
+        String fen = board.getFen();
+        int generation = ++explorerGeneration;
+
+        persistenceQueue.read(() -> databaseService.getExplorerMoves(fen)).whenComplete((moves, error) -> {
+            if (error != null) {
+                System.err.println("Failed to load explorer moves: " + error.getMessage());
+            } else if (generation == explorerGeneration) {
+                explorerFen = fen;
+                explorerTable.setItems(FXCollections.observableArrayList(moves));
+            }
+        });
+    }
+
+    private String explorerMoveName(ExplorerMove move) {
+        String san = SanConverter.toSan(explorerFen, move.getMove());
+        return san != null ? san.substring(san.lastIndexOf(' ') + 1) : move.getMove();
     }
 
     @FXML
@@ -494,6 +772,10 @@ public class MainController {
             return;
         }
         importedGamesTable.getItems().clear();
+        if (fullHistoryCheckBox != null && fullHistoryCheckBox.isSelected()) {
+            importFullHistory(username);
+            return;
+        }
         new Thread(() -> {
             try {
                 List<ChessGame> games = chessComApiService.fetchAllGamesForUser(username);
@@ -513,6 +795,85 @@ public class MainController {
         }).start();
     }
 
+    /**
+     * Imports every monthly archive of the user, showing games as each month arrives and
+     * putting the table in date order once all archives are in.
+     */
+    private void importFullHistory(String username) {
+        ObservableList<ChessGame> importedGames = FXCollections.observableArrayList();
+        importedGamesTable.setItems(importedGames);
+        importButton.setDisable(true);
+        importProgressBar.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+        importProgressBar.setVisible(true);
+        importStatusLabel.setText("Fetching archives...");
+
+        Thread importThread = new Thread(() -> {
+            try {
+                List<ChessGame> games = chessComApiService.fetchFullHistoryForUser(username, (archiveGames, done, total) ->
+                        javafx.application.Platform.runLater(() -> {
+                            importedGames.addAll(archiveGames);
+                            importProgressBar.setProgress((double) done / total);
+                            importStatusLabel.setText(done + "/" + total + " months, " + importedGames.size() + " games");
+                        }));
+                javafx.application.Platform.runLater(() -> {
+                    importButton.setDisable(false);
+                    importProgressBar.setVisible(false);
+                    if (games.isEmpty()) {
+                        importStatusLabel.setText("");
+                        showAlert("No Games Found", "No games found for user: " + username, Alert.AlertType.INFORMATION);
+                    } else {
+                        importedGames.setAll(games);
+                        importStatusLabel.setText(games.size() + " games imported");
+                    }
+                });
+            } catch (Exception e) {
+                javafx.application.Platform.runLater(() -> {
+                    importButton.setDisable(false);
+                    importProgressBar.setVisible(false);
+                    importStatusLabel.setText("");
+                    showAlert("Error", "Failed to fetch games: " + e.getMessage(), Alert.AlertType.ERROR);
+                });
+                e.printStackTrace();
+            }
+        });
+        importThread.setDaemon(true);
+        importThread.start();
+    }
+
+    /**
+     * Adds the user's new Chess.com games straight to the collection, only fetching months that may have changed.
+     */
+    private void handleSyncAccount() {
+        String username = usernameField.getText().trim();
+        if (username.isEmpty()) {
+            showAlert("Input Error", "Username cannot be empty.", Alert.AlertType.WARNING);
+            return;
+        }
+        syncAccountButton.setDisable(true);
+        importStatusLabel.setText("Syncing " + username + "...");
+
+        Thread syncThread = new Thread(() -> {
+            try {
+                ArchiveSyncService.SyncResult result = archiveSyncService.syncUser(username);
+                javafx.application.Platform.runLater(() -> {
+                    syncAccountButton.setDisable(false);
+                    importStatusLabel.setText(result.getGamesInserted() + " new games saved ("
+                            + result.getArchivesFetched() + " of " + result.getArchivesChecked() + " open months changed)");
+                    loadSavedGames();
+                });
+            } catch (Exception e) {
+                javafx.application.Platform.runLater(() -> {
+                    syncAccountButton.setDisable(false);
+                    importStatusLabel.setText("");
+                    showAlert("Error", "Failed to sync games: " + e.getMessage(), Alert.AlertType.ERROR);
+                });
+                e.printStackTrace();
+            }
+        });
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
     private void handleAddAnalysis() {
         this.currentlyLoadedGame = new ChessGame();
         this.currentlyLoadedGame.url = UUID.randomUUID().toString();
@@ -524,7 +885,9 @@ public class MainController {
         this.board = new Board();
         this.moveList = new MoveList();
         this.currentMoveIndex = -1;
+        this.navigator = new PositionNavigator(board, board.getFen(), moveList);
         this.isModified = true;
+        resetGameAnalysis();
 
         if (blackPlayerNameLabel != null) blackPlayerNameLabel.setText("Black");
         if (whitePlayerNameLabel != null) whitePlayerNameLabel.setText("White");
@@ -565,12 +928,15 @@ public class MainController {
             if (currentMoveIndex < moveList.size() - 1) {
                 // Truncate moveList
                 moveList.subList(currentMoveIndex + 1, moveList.size()).clear();
+                navigator.truncate(currentMoveIndex);
             }
 
-            board.doMove(move);
             moveList.add(move);
+            navigator.goTo(currentMoveIndex + 1);
             currentMoveIndex++;
             isModified = true;
+            editCount++;
+            resetGameAnalysis();
 
             updateBoardView();
             updateMoveListArea();
@@ -590,13 +956,22 @@ public class MainController {
             return;
         }
 
-        boolean isSaved = false;
-        try {
-            isSaved = databaseService.isGameSaved(currentlyLoadedGame.getUrl());
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        persistenceQueue.isGameSaved(currentlyLoadedGame.getUrl()).whenComplete((isSaved, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+            }
+            saveOrRemoveCurrentGame(error == null && isSaved);
+        });
+    }
 
+    /**
+     * Asks for the game's details and saves it, or takes it out of the collection if it is
+     * already saved unchanged.
+     */
+    private void saveOrRemoveCurrentGame(boolean isSaved) {
+        if (currentlyLoadedGame == null) {
+            return;
+        }
         if (isModified || !isSaved) {
             // Create a custom dialog for metadata
             Dialog<ChessGame> dialog = new Dialog<>();
@@ -644,10 +1019,19 @@ public class MainController {
             Optional<ChessGame> result = dialog.showAndWait();
 
             if (result.isPresent()) {
-                // If it was a branching (modified) game, ensure new ID
+                // A branched (modified) game gets a new ID and is stored as a variation of the
+                // game it came from, if that game is saved. The editor only takes the new ID
+                // once the write has succeeded.
+                ChessGame editedGame = currentlyLoadedGame;
+                ChessGame toSave = new ChessGame();
+                toSave.url = editedGame.getUrl();
+                toSave.note = editedGame.note;
+                toSave.parentId = editedGame.parentId;
                 if (isModified) {
-                    currentlyLoadedGame.url = UUID.randomUUID().toString();
+                    toSave.parentId = editedGame.getUrl();
+                    toSave.url = UUID.randomUUID().toString();
                 }
+                int savedEditCount = editCount;
 
                 String username = usernameField.getText().trim();
                 if (username.isEmpty()) username = "User";
@@ -687,14 +1071,31 @@ public class MainController {
                     movesBuilder.append("*"); // Result
 
                     pgnBuilder.append(movesBuilder.toString());
-                    currentlyLoadedGame.pgn = pgnBuilder.toString();
+                    toSave.pgn = pgnBuilder.toString();
+
+                    persistenceQueue.saveGame(toSave, username).whenComplete((ignored, error) -> {
+                        if (error instanceof PersistenceQueue.SupersededException) {
+                            // Removed again before the save ran; the editor keeps the game as it was
+                        } else if (error != null) {
+                            // The editor still holds the game as it was, so saving again is safe
+                            showAlert("Error", "Failed to save: " + error.getMessage(), Alert.AlertType.ERROR);
+                            error.printStackTrace();
+                        } else {
+                            if (currentlyLoadedGame == editedGame) {
+                                editedGame.url = toSave.getUrl();
+                                editedGame.parentId = toSave.parentId;
+                                editedGame.pgn = toSave.getPgn();
+                                // Moves made while the write ran are still unsaved
+                                if (editCount == savedEditCount) {
+                                    isModified = false;
+                                }
+                            }
+                            showAlert("Success", "Game saved successfully.", Alert.AlertType.INFORMATION);
+                            loadSavedGames();
+                        }
+                        updateSaveStarState();
+                    });
 
-                    databaseService.saveGame(currentlyLoadedGame, username);
-                    showAlert("Success", "Game saved successfully.", Alert.AlertType.INFORMATION);
-                    isModified = false;
-                    loadSavedGames();
-                    updateSaveStarState();
-                    
                     if (whitePlayerNameLabel != null) whitePlayerNameLabel.setText(currentlyLoadedGame.whitePlayerName);
                     if (blackPlayerNameLabel != null) blackPlayerNameLabel.setText(currentlyLoadedGame.blackPlayerName);
 
@@ -706,15 +1107,18 @@ public class MainController {
                 updateSaveStarState();
             }
         } else {
-            try {
-                databaseService.deleteGame(currentlyLoadedGame.getUrl());
-                showAlert("Game Removed", "Game removed from your collection.", Alert.AlertType.INFORMATION);
-                loadSavedGames();
+            persistenceQueue.deleteGame(currentlyLoadedGame.getUrl()).whenComplete((ignored, error) -> {
+                if (error instanceof PersistenceQueue.SupersededException) {
+                    // Saved again before the delete ran
+                } else if (error != null) {
+                    showAlert("Database Error", "An error occurred: " + error.getMessage(), Alert.AlertType.ERROR);
+                    error.printStackTrace();
+                } else {
+                    showAlert("Game Removed", "Game removed from your collection.", Alert.AlertType.INFORMATION);
+                    loadSavedGames();
+                }
                 updateSaveStarState();
-            } catch (SQLException e) {
-                showAlert("Database Error", "An error occurred: " + e.getMessage(), Alert.AlertType.ERROR);
-                e.printStackTrace();
-            }
+            });
         }
     }
 
@@ -726,45 +1130,147 @@ public class MainController {
 
         Optional<ButtonType> result = alert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            try {
-                databaseService.deleteGame(game.getUrl());
+            persistenceQueue.deleteGame(game.getUrl()).whenComplete((ignored, error) -> {
+                if (error instanceof PersistenceQueue.SupersededException) {
+                    return;
+                }
+                if (error != null) {
+                    showAlert("Database Error", "Failed to delete the game: " + error.getMessage(), Alert.AlertType.ERROR);
+                    error.printStackTrace();
+                    return;
+                }
                 showAlert("Game Deleted", "The game has been removed from your collection.", Alert.AlertType.INFORMATION);
                 loadSavedGames();
                 if (currentlyLoadedGame != null && currentlyLoadedGame.getUrl().equals(game.getUrl())) {
                     updateSaveStarState();
                 }
-            } catch (SQLException e) {
-                showAlert("Database Error", "Failed to delete the game: " + e.getMessage(), Alert.AlertType.ERROR);
-                e.printStackTrace();
-            }
+            });
         }
     }
 
 
+    private void setupCollectionSearch() {
+        if (collectionSearchField == null) {
+            return;
+        }
+        searchDebounce.setOnFinished(event -> loadSavedGames());
+        collectionSearchField.textProperty().addListener((obs, oldText, newText) -> searchDebounce.playFromStart());
+    }
+
+    /**
+     * Loads the next page of saved games, or of search results, on a background thread.
+     * Results of a load that has since been replaced by a newer one are dropped.
+     */
+    private void loadSavedGamesPage(boolean firstPage) {
+        String query = savedGamesQuery;
+        List<ChessGame> items = savedGamesTable.getItems();
+        int offset = firstPage ? 0 : items.size();
+        ChessGame last = firstPage || items.isEmpty() ? null : items.get(items.size() - 1);
+        int generation = firstPage ? ++savedGamesGeneration : savedGamesGeneration;
+        savedGamesLoading = true;
+
+        persistenceQueue.read(() -> query.isEmpty()
+                ? databaseService.getGameSummaries(last != null ? last.getDate() : null,
+                        last != null ? last.getUrl() : null, SAVED_GAMES_PAGE_SIZE)
+                : databaseService.searchGames(query, SAVED_GAMES_PAGE_SIZE, offset)).whenComplete((page, error) -> {
+            if (generation != savedGamesGeneration) {
+                return;
+            }
+            savedGamesLoading = false;
+            if (error != null) {
+                showAlert("Database Error", "Failed to load saved games: " + error.getMessage(), Alert.AlertType.ERROR);
+                error.printStackTrace();
+                return;
+            }
+            savedGamesHasMore = page.size() == SAVED_GAMES_PAGE_SIZE;
+            if (firstPage) {
+                savedGamesTable.setItems(FXCollections.observableArrayList(page));
+            } else {
+                savedGamesTable.getItems().addAll(page);
+            }
+        });
+    }
+
+    /**
+     * Lists the saved games that reached the board's current position, replacing the table contents
+     * until the search text changes or the collection is reloaded.
+     */
+    private void handleFindPosition() {
+        if (board == null || savedGamesTable == null) {
+            return;
+        }
+        String fen = board.getFen();
+        int generation = ++savedGamesGeneration;
+        savedGamesHasMore = false;
+        savedGamesLoading = true;
+
+        persistenceQueue.read(() -> databaseService.findGamesByPosition(fen)).whenComplete((games, error) -> {
+            if (generation != savedGamesGeneration) {
+                return;
+            }
+            savedGamesLoading = false;
+            if (error != null) {
+                showAlert("Database Error", "Failed to look up position: " + error.getMessage(), Alert.AlertType.ERROR);
+                error.printStackTrace();
+                return;
+            }
+            savedGamesTable.setItems(FXCollections.observableArrayList(games));
+        });
+    }
+
+    /**
+     * Reloads the saved games table from the first page, applying the search text if there is any.
+     */
     private void loadSavedGames() {
-        try {
-            List<ChessGame> savedGames = databaseService.getAllGames();
-            ObservableList<ChessGame> observableGames = FXCollections.observableArrayList(savedGames);
-            savedGamesTable.setItems(observableGames);
-        } catch (SQLException e) {
-            showAlert("Database Error", "Failed to load saved games: " + e.getMessage(), Alert.AlertType.ERROR);
-            e.printStackTrace();
+        if (savedGamesTable == null) {
+            return;
+        }
+        savedGamesQuery = collectionSearchField != null ? collectionSearchField.getText().trim() : "";
+        loadSavedGamesPage(true);
+        // The collection changed, so the import table's saved marks may have too
+        if (importedGamesTable != null) {
+            importedGamesTable.refresh();
         }
     }
 
+    /**
+     * Saved-games rows hold only summaries; the PGN and note are read when a game is opened.
+     */
+    private void loadSavedGame(ChessGame summary) {
+        persistenceQueue.read(() -> databaseService.getGame(summary.getUrl())).whenComplete((game, error) -> {
+            if (error != null) {
+                showAlert("Database Error", "Failed to load game: " + error.getMessage(), Alert.AlertType.ERROR);
+                error.printStackTrace();
+                return;
+            }
+            if (game == null) {
+                showAlert("Error", "This game is no longer in your collection.", Alert.AlertType.ERROR);
+                loadSavedGames();
+                return;
+            }
+            loadGame(game);
+        });
+    }
+
     private void updateSaveStarState() {
         if (saveStarButton == null) return;
         if (currentlyLoadedGame == null) {
             saveStarButton.setSelected(false);
             return;
         }
-        try {
-            boolean isSaved = databaseService.isGameSaved(currentlyLoadedGame.getUrl());
+        String url = currentlyLoadedGame.getUrl();
+        persistenceQueue.isGameSaved(url).whenComplete((isSaved, error) -> {
+            // Another game may have been loaded while the lookup ran
+            if (currentlyLoadedGame == null || !url.equals(currentlyLoadedGame.getUrl())) {
+                return;
+            }
+            if (error != null) {
+                error.printStackTrace();
+                saveStarButton.setSelected(false);
+                return;
+            }
             saveStarButton.setSelected(isSaved);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            saveStarButton.setSelected(false);
-        }
+        });
     }
 
     private void analyzeCurrentPosition() {
@@ -773,31 +1279,266 @@ public class MainController {
         }
 
         depthLabel.setText("...");
-        
-        new Thread(() -> {
-            String fen = board.getFen();
-            List<AnalysisLine> lines = stockfishApiService.getAnalysisLines(fen);
-            
-            javafx.application.Platform.runLater(() -> {
-                if (!lines.isEmpty()) {
-                    depthLabel.setText("15"); // Assuming depth 15 as in API call
-                    
-                    ObservableList<AnalysisLine> observableLines = FXCollections.observableArrayList(lines);
-                    engineMovesListView.setItems(observableLines);
-                } else {
-                    engineMovesListView.setItems(FXCollections.emptyObservableList());
+        showAnalysisLines(List.of());
+        String fen = board.getFen();
+        showBookMoves(fen);
+        SearchLimit limit = analysisLimitChoice != null && analysisLimitChoice.getValue() != null
+                ? analysisLimitChoice.getValue()
+                : SearchLimit.depth(AnalysisBackend.DEFAULT_DEPTH);
+        if (multiPvChoice != null && multiPvChoice.getValue() != null) {
+            limit = limit.withMultiPv(multiPvChoice.getValue());
+        }
+
+        // The scheduler supersedes the previous position and only calls back on the FX thread
+        // for the position that is still current. The game id keeps the engine's hash table warm
+        // while stepping through the same game.
+        String gameId = currentlyLoadedGame != null ? currentlyLoadedGame.getUrl() : null;
+        analysisScheduler.submit(gameId, fen, limit, new AnalysisScheduler.Listener() {
+            @Override
+            public void onUpdate(long positionId, List<AnalysisLine> lines) {
+                showAnalysisLines(lines);
+            }
+
+            @Override
+            public void onFinished(long positionId, List<AnalysisLine> lines) {
+                if (lines.isEmpty()) {
+                    depthLabel.setText("-");
                 }
-            });
-        }).start();
+            }
+        });
     }
 
-    private void clearAnalysis() {
-        depthLabel.setText("-");
+    /**
+     * Updates the engine lines in place so only rows whose line changed are redrawn.
+     */
+    private void showAnalysisLines(List<AnalysisLine> lines) {
+        if (!lines.isEmpty()) {
+            depthLabel.setText(String.valueOf(lines.get(0).getDepth()));
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            if (i >= engineLines.size()) {
+                engineLines.add(lines.get(i));
+            } else if (!engineLines.get(i).equals(lines.get(i))) {
+                engineLines.set(i, lines.get(i));
+            }
+        }
+        if (engineLines.size() > lines.size()) {
+            engineLines.remove(lines.size(), engineLines.size());
+        }
+
         if (engineMovesListView != null) {
-            engineMovesListView.setItems(FXCollections.emptyObservableList());
+            double height = Math.max(1, engineLines.size()) * ENGINE_LINE_HEIGHT + 2;
+            engineMovesListView.setPrefHeight(height);
+            engineMovesListView.setMaxHeight(height);
         }
     }
 
+    private void handleAnalyzeGame() {
+        if (gameAnalysisThread != null && gameAnalysisThread.isAlive()) {
+            gameAnalysisThread.interrupt();
+            return;
+        }
+        if (moveList == null || moveList.isEmpty()) {
+            showAlert("Analyze Game", "Load a game or play some moves first.", Alert.AlertType.INFORMATION);
+            return;
+        }
+
+        MoveList target = moveList;
+        MoveList snapshot = new MoveList(moveList.getStartFen());
+        snapshot.addAll(moveList);
+
+        analyzeGameButton.setText("Cancel");
+        gameAnalysisProgressBar.setProgress(0);
+        gameAnalysisProgressBar.setVisible(true);
+        gameAnalysisSummaryLabel.setText("");
+
+        gameAnalysisThread = new Thread(() -> {
+            try {
+                List<PlyEvaluation> evaluations = gameAnalysisService.analyzeGame(snapshot, AnalysisBackend.DEFAULT_DEPTH,
+                        (done, total) -> javafx.application.Platform.runLater(() ->
+                                gameAnalysisProgressBar.setProgress(total == 0 ? 1 : (double) done / total)));
+
+                javafx.application.Platform.runLater(() -> {
+                    finishGameAnalysis();
+                    // Ignore results if the user has since loaded another game or changed the moves
+                    if (moveList == target && moveList.size() == evaluations.size()) {
+                        gameAnalysis = evaluations;
+                        updateMoveListArea();
+                        gameAnalysisSummaryLabel.setText(summarizeGameAnalysis(evaluations));
+                    }
+                });
+            } catch (InterruptedException e) {
+                javafx.application.Platform.runLater(this::finishGameAnalysis);
+            } catch (Exception e) {
+                javafx.application.Platform.runLater(() -> {
+                    finishGameAnalysis();
+                    showAlert("Error", "Game analysis failed: " + e.getMessage(), Alert.AlertType.ERROR);
+                });
+                e.printStackTrace();
+            }
+        });
+        gameAnalysisThread.setDaemon(true);
+        gameAnalysisThread.start();
+    }
+
+    private void finishGameAnalysis() {
+        analyzeGameButton.setText("Analyze game");
+        gameAnalysisProgressBar.setVisible(false);
+    }
+
+    private void resetGameAnalysis() {
+        if (gameAnalysisThread != null && gameAnalysisThread.isAlive()) {
+            gameAnalysisThread.interrupt();
+        }
+        gameAnalysis = new ArrayList<>();
+        if (gameAnalysisSummaryLabel != null) {
+            gameAnalysisSummaryLabel.setText("");
+        }
+    }
+
+    private void setupCpuShareChoice() {
+        if (cpuShareChoice == null) return;
+
+        cpuShareChoice.getItems().addAll(25, 50, 75, 100);
+        cpuShareChoice.setConverter(new javafx.util.StringConverter<>() {
+            @Override
+            public String toString(Integer percent) {
+                return percent == null ? "" : "CPU " + percent + "%";
+            }
+
+            @Override
+            public Integer fromString(String text) {
+                return null;
+            }
+        });
+        cpuShareChoice.setValue((int) Math.round(collectionAnalysisJob.getCpuShare() * 100));
+        cpuShareChoice.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null) {
+                collectionAnalysisJob.setCpuShare(newVal / 100.0);
+            }
+        });
+    }
+
+    /**
+     * Starts, pauses or resumes the background analysis of every saved game.
+     */
+    private void handleAnalyzeCollection() {
+        if (collectionAnalysisJob.isRunning()) {
+            if (collectionAnalysisJob.isPaused()) {
+                collectionAnalysisJob.resume();
+                analyzeCollectionButton.setText("Pause");
+            } else {
+                collectionAnalysisJob.pause();
+                analyzeCollectionButton.setText("Resume");
+            }
+            return;
+        }
+
+        int depth = analysisLimitChoice != null && analysisLimitChoice.getValue() != null
+                ? analysisLimitChoice.getValue().getDepthOr(AnalysisBackend.DEFAULT_DEPTH)
+                : AnalysisBackend.DEFAULT_DEPTH;
+        analyzeCollectionButton.setText("Pause");
+        stopCollectionButton.setDisable(false);
+        collectionAnalysisProgressBar.setProgress(0);
+        collectionAnalysisProgressBar.setVisible(true);
+        collectionAnalysisStatusLabel.setText("Loading games...");
+
+        collectionAnalysisJob.start(depth, new CollectionAnalysisJob.Listener() {
+            @Override
+            public void onProgress(CollectionAnalysisJob.Progress progress) {
+                javafx.application.Platform.runLater(() -> showCollectionProgress(progress));
+            }
+
+            @Override
+            public void onFinished(CollectionAnalysisJob.Progress progress) {
+                javafx.application.Platform.runLater(() -> {
+                    showCollectionProgress(progress);
+                    analyzeCollectionButton.setText("Analyze all");
+                    stopCollectionButton.setDisable(true);
+                    collectionAnalysisProgressBar.setVisible(false);
+                });
+            }
+        });
+    }
+
+    private void showCollectionProgress(CollectionAnalysisJob.Progress progress) {
+        int total = progress.getTotalGames();
+        collectionAnalysisProgressBar.setProgress(total == 0 ? 1 : (double) progress.getGamesDone() / total);
+        collectionAnalysisStatusLabel.setText(String.format("%d/%d games, %d positions (%.1f/s), %d skipped",
+                progress.getGamesDone(), total, progress.getPositionsAnalysed(),
+                progress.getPositionsPerSecond(), progress.getPositionsSkipped()));
+    }
+
+    private String summarizeGameAnalysis(List<PlyEvaluation> evaluations) {
+        int inaccuracies = 0;
+        int mistakes = 0;
+        int blunders = 0;
+        for (PlyEvaluation evaluation : evaluations) {
+            switch (evaluation.getClassification()) {
+                case INACCURACY: inaccuracies++; break;
+                case MISTAKE: mistakes++; break;
+                case BLUNDER: blunders++; break;
+                default: break;
+            }
+        }
+        return inaccuracies + " inaccuracies, " + mistakes + " mistakes, " + blunders + " blunders";
+    }
+
+    private String annotationSymbol(int moveIndex) {
+        if (moveIndex < 0 || moveIndex >= gameAnalysis.size()) {
+            return "";
+        }
+        return gameAnalysis.get(moveIndex).getClassification().getSymbol();
+    }
+
+    private String annotationStyle(int moveIndex) {
+        if (moveIndex < 0 || moveIndex >= gameAnalysis.size()) {
+            return "";
+        }
+        MoveClassification classification = gameAnalysis.get(moveIndex).getClassification();
+        switch (classification) {
+            case INACCURACY: return "-fx-fill: #d6a600;";
+            case MISTAKE: return "-fx-fill: #e07b00;";
+            case BLUNDER: return "-fx-fill: #b33434;";
+            default: return "";
+        }
+    }
+
+    /**
+     * Shows the opening book's moves for the position straight away, before the engine reports.
+     * A null FEN clears them.
+     */
+    private void showBookMoves(String fen) {
+        if (bookMovesLabel == null) return;
+
+        List<BookMove> moves = openingBook != null && fen != null ? openingBook.lookup(fen) : List.of();
+        if (moves.isEmpty()) {
+            bookMovesLabel.setText("");
+            bookMovesLabel.setManaged(false);
+            return;
+        }
+        int totalWeight = 0;
+        for (BookMove move : moves) {
+            totalWeight += move.getWeight();
+        }
+        StringBuilder text = new StringBuilder("Book:");
+        for (BookMove move : moves) {
+            String san = SanConverter.toSan(fen, move.getMove());
+            String name = san != null ? san.substring(san.lastIndexOf(' ') + 1) : move.getMove();
+            int percent = totalWeight == 0 ? 0 : Math.round(100f * move.getWeight() / totalWeight);
+            text.append("  ").append(name).append(" ").append(percent).append("%");
+        }
+        bookMovesLabel.setText(text.toString());
+        bookMovesLabel.setManaged(true);
+    }
+
+    private void clearAnalysis() {
+        analysisScheduler.cancel();
+        showBookMoves(null);
+        showAnalysisLines(List.of());
+        depthLabel.setText("-");
+    }
+
     private void updateStockfishAnalysisIfRunning() {
         if (isStockfishRunning.get()) {
             analyzeCurrentPosition();
@@ -1,19 +1,48 @@
 package com.chesslog.model;
 
+import java.util.Objects;
+
 /**
  * Represents a single analysis line from a chess engine.
  */
 public class AnalysisLine {
+    /**
+     * Centipawn value used for a forced mate, so mates sort above any material advantage.
+     */
+    public static final int MATE_CENTIPAWNS = 10000;
+
     private final String evaluation;
     private final String bestMove;
     private final String continuation;
     private final boolean isMate;
+    private final int depth;
+    private final int rank;
+    private final String sanContinuation;
 
     public AnalysisLine(String evaluation, String bestMove, String continuation, boolean isMate) {
+        this(evaluation, bestMove, continuation, isMate, 0);
+    }
+
+    public AnalysisLine(String evaluation, String bestMove, String continuation, boolean isMate, int depth) {
+        this(evaluation, bestMove, continuation, isMate, depth, 1, null);
+    }
+
+    public AnalysisLine(String evaluation, String bestMove, String continuation, boolean isMate, int depth,
+                        int rank, String sanContinuation) {
         this.evaluation = evaluation;
         this.bestMove = bestMove;
         this.continuation = continuation;
         this.isMate = isMate;
+        this.depth = depth;
+        this.rank = rank;
+        this.sanContinuation = sanContinuation;
+    }
+
+    /**
+     * Returns a copy of this line carrying the principal variation in SAN.
+     */
+    public AnalysisLine withSanContinuation(String sanContinuation) {
+        return new AnalysisLine(evaluation, bestMove, continuation, isMate, depth, rank, sanContinuation);
     }
 
     public String getEvaluation() {
@@ -32,6 +61,64 @@ public class AnalysisLine {
         return isMate;
     }
 
+    /**
+     * Search depth the line was produced at, or 0 when the backend did not report it.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Position of the line among the engine's principal variations, 1 being the best.
+     */
+    public int getRank() {
+        return rank;
+    }
+
+    /**
+     * The principal variation in SAN with move numbers, or null if it has not been converted.
+     */
+    public String getSanContinuation() {
+        return sanContinuation;
+    }
+
+    /**
+     * The best move in SAN when available, otherwise in UCI notation.
+     */
+    public String getDisplayBestMove() {
+        if (sanContinuation != null && !sanContinuation.isEmpty()) {
+            for (String token : sanContinuation.split(" ")) {
+                if (!Character.isDigit(token.charAt(0))) {
+                    return token;
+                }
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * The continuation in SAN when available, otherwise in UCI notation.
+     */
+    public String getDisplayContinuation() {
+        return sanContinuation != null ? sanContinuation : continuation;
+    }
+
+    /**
+     * The evaluation from White's point of view in centipawns. A mate in n is mapped to
+     * {@link #MATE_CENTIPAWNS} minus n, so quicker mates score higher.
+     */
+    public int toCentipawns() {
+        try {
+            if (isMate) {
+                int moves = Integer.parseInt(evaluation);
+                return moves >= 0 ? MATE_CENTIPAWNS - moves : -MATE_CENTIPAWNS - moves;
+            }
+            return (int) Math.round(Double.parseDouble(evaluation) * 100);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     /**
      * Formats the evaluation string for display.
      */
@@ -46,4 +133,23 @@ public class AnalysisLine {
             return evaluation;
         }
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AnalysisLine)) return false;
+        AnalysisLine other = (AnalysisLine) o;
+        return isMate == other.isMate
+                && depth == other.depth
+                && rank == other.rank
+                && Objects.equals(evaluation, other.evaluation)
+                && Objects.equals(bestMove, other.bestMove)
+                && Objects.equals(continuation, other.continuation)
+                && Objects.equals(sanContinuation, other.sanContinuation);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(evaluation, bestMove, continuation, isMate, depth, rank, sanContinuation);
+    }
 }
@@ -0,0 +1,26 @@
+package com.chesslog.model;
+
+/**
+ * A move found in an opening book together with its relative weight.
+ */
+public class BookMove {
+    private final String move;
+    private final int weight;
+
+    /**
+     * @param move   The move in UCI notation, with castling as king to its destination square.
+     * @param weight How often the book recommends the move, relative to the other moves in the position.
+     */
+    public BookMove(String move, int weight) {
+        this.move = move;
+        this.weight = weight;
+    }
+
+    public String getMove() {
+        return move;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+}
@@ -21,6 +21,13 @@ public class ChessGame {
     @SerializedName("note")
     public String note;
 
+    // Moves packed by MoveCodec; only set for games read from the database
+    public transient byte[] encodedMoves;
+
+    // The saved game this one was branched from, and the ply where it leaves that game
+    public transient String parentId;
+    public transient int branchPly;
+
     public String getPgn() {
         return pgn;
     }
@@ -52,4 +59,8 @@ public class ChessGame {
     public String getResult() {
         return result;
     }
+
+    public byte[] getEncodedMoves() {
+        return encodedMoves;
+    }
 }
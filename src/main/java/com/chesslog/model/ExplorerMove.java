@@ -0,0 +1,66 @@
+package com.chesslog.model;
+
+/**
+ * A move played from a position in the saved collection, with how those games ended.
+ */
+public class ExplorerMove {
+    private final String move;
+    private final int games;
+    private final int whiteWins;
+    private final int draws;
+    private final int blackWins;
+    private final int averageElo;
+
+    /**
+     * @param move       The move in UCI notation.
+     * @param averageElo Average rating of the players who made the move, or 0 if none were rated.
+     */
+    public ExplorerMove(String move, int games, int whiteWins, int draws, int blackWins, int averageElo) {
+        this.move = move;
+        this.games = games;
+        this.whiteWins = whiteWins;
+        this.draws = draws;
+        this.blackWins = blackWins;
+        this.averageElo = averageElo;
+    }
+
+    public String getMove() {
+        return move;
+    }
+
+    public int getGames() {
+        return games;
+    }
+
+    public int getWhiteWins() {
+        return whiteWins;
+    }
+
+    public int getDraws() {
+        return draws;
+    }
+
+    public int getBlackWins() {
+        return blackWins;
+    }
+
+    public int getAverageElo() {
+        return averageElo;
+    }
+
+    public int getWhitePercent() {
+        return percent(whiteWins);
+    }
+
+    public int getDrawPercent() {
+        return percent(draws);
+    }
+
+    public int getBlackPercent() {
+        return percent(blackWins);
+    }
+
+    private int percent(int count) {
+        return games == 0 ? 0 : Math.round(100f * count / games);
+    }
+}
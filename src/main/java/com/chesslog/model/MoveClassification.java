@@ -0,0 +1,50 @@
+package com.chesslog.model;
+
+/**
+ * Quality of a played move, judged by how much winning chance it gave away
+ * compared to the engine's evaluation before the move.
+ */
+public enum MoveClassification {
+    GOOD(""),
+    INACCURACY("?!"),
+    MISTAKE("?"),
+    BLUNDER("??");
+
+    // Scales centipawns onto a -1..1 winning chance curve
+    private static final double WIN_CHANCE_SCALE = 0.00368208;
+
+    private final String symbol;
+
+    MoveClassification(String symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * The annotation glyph shown after the move, empty for good moves.
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Classifies a move from the mover's point of view.
+     *
+     * @param centipawnsBefore Evaluation before the move, positive when the mover is better.
+     * @param centipawnsAfter  Evaluation after the move, positive when the mover is better.
+     */
+    public static MoveClassification classify(int centipawnsBefore, int centipawnsAfter) {
+        double lost = winningChances(centipawnsBefore) - winningChances(centipawnsAfter);
+        if (lost >= 0.3) {
+            return BLUNDER;
+        } else if (lost >= 0.2) {
+            return MISTAKE;
+        } else if (lost >= 0.1) {
+            return INACCURACY;
+        }
+        return GOOD;
+    }
+
+    private static double winningChances(int centipawns) {
+        return 2 / (1 + Math.exp(-WIN_CHANCE_SCALE * centipawns)) - 1;
+    }
+}
@@ -0,0 +1,55 @@
+package com.chesslog.model;
+
+/**
+ * Engine verdict on a single half-move of a game, produced by whole-game analysis.
+ */
+public class PlyEvaluation {
+    private final int ply;
+    private final String move;
+    private final int centipawns;
+    private final AnalysisLine line;
+    private final String bestMove;
+    private final MoveClassification classification;
+
+    /**
+     * @param ply            Zero-based index of the move in the game.
+     * @param move           The move played, in SAN.
+     * @param centipawns     Evaluation after the move from White's point of view; mates are mapped to large values.
+     * @param line           The engine line for the position after the move, or null for finished games.
+     * @param bestMove       The engine's preferred move in the position before the move, in UCI notation.
+     * @param classification How costly the move was for the side that played it.
+     */
+    public PlyEvaluation(int ply, String move, int centipawns, AnalysisLine line, String bestMove,
+                         MoveClassification classification) {
+        this.ply = ply;
+        this.move = move;
+        this.centipawns = centipawns;
+        this.line = line;
+        this.bestMove = bestMove;
+        this.classification = classification;
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    public String getMove() {
+        return move;
+    }
+
+    public int getCentipawns() {
+        return centipawns;
+    }
+
+    public AnalysisLine getLine() {
+        return line;
+    }
+
+    public String getBestMove() {
+        return bestMove;
+    }
+
+    public MoveClassification getClassification() {
+        return classification;
+    }
+}
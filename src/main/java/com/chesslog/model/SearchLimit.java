@@ -0,0 +1,84 @@
+package com.chesslog.model;
+
+/**
+ * How long an engine search may run (to a fixed depth, for a fixed time, or until stopped)
+ * and how many principal variations it should report.
+ */
+public class SearchLimit {
+
+    public enum Type {
+        DEPTH,
+        TIME,
+        INFINITE
+    }
+
+    public static final int MAX_MULTI_PV = 5;
+
+    private final Type type;
+    private final long value;
+    private final int multiPv;
+
+    private SearchLimit(Type type, long value, int multiPv) {
+        this.type = type;
+        this.value = value;
+        this.multiPv = multiPv;
+    }
+
+    public static SearchLimit depth(int depth) {
+        return new SearchLimit(Type.DEPTH, depth, 1);
+    }
+
+    public static SearchLimit time(long millis) {
+        return new SearchLimit(Type.TIME, millis, 1);
+    }
+
+    public static SearchLimit infinite() {
+        return new SearchLimit(Type.INFINITE, 0, 1);
+    }
+
+    /**
+     * Returns the same limit asking for the given number of principal variations (1 to 5).
+     */
+    public SearchLimit withMultiPv(int lines) {
+        return new SearchLimit(type, value, Math.max(1, Math.min(MAX_MULTI_PV, lines)));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public int getMultiPv() {
+        return multiPv;
+    }
+
+    /**
+     * The depth to use for backends that can only run fixed-depth searches.
+     */
+    public int getDepthOr(int defaultDepth) {
+        return type == Type.DEPTH ? (int) value : defaultDepth;
+    }
+
+    /**
+     * The UCI "go" command for this limit.
+     */
+    public String toUciCommand() {
+        switch (type) {
+            case DEPTH: return "go depth " + value;
+            case TIME: return "go movetime " + value;
+            default: return "go infinite";
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case DEPTH: return "Depth " + value;
+            case TIME: return (value % 1000 == 0 ? (value / 1000) + " s" : value + " ms");
+            default: return "Infinite";
+        }
+    }
+}
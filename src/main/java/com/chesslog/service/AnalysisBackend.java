@@ -0,0 +1,95 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.SearchLimit;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Common contract for anything that can evaluate a chess position given as a FEN string,
+ * whether it is the remote stockfish.online API or a local UCI engine.
+ */
+public interface AnalysisBackend {
+
+    int DEFAULT_DEPTH = 15;
+
+    /**
+     * Analyses the position at the default depth.
+     *
+     * @param fen The chess FEN string.
+     * @return A list of AnalysisLine objects, empty if the analysis failed.
+     */
+    default List<AnalysisLine> getAnalysisLines(String fen) {
+        return getAnalysisLines(fen, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Analyses the position to the given depth.
+     *
+     * @param fen   The chess FEN string.
+     * @param depth The search depth in plies.
+     * @return A list of AnalysisLine objects, empty if the analysis failed.
+     */
+    List<AnalysisLine> getAnalysisLines(String fen, int depth);
+
+    /**
+     * Starts a search that reports its lines as they improve. Backends that cannot stream run a
+     * fixed-depth search in the background and report its result once.
+     *
+     * @param fen      The chess FEN string.
+     * @param limit    When the search should end on its own.
+     * @param onUpdate Called from a background thread with the latest lines.
+     * @return A session that can stop the search and completes with the final lines.
+     */
+    default AnalysisSession startAnalysis(String fen, SearchLimit limit, Consumer<List<AnalysisLine>> onUpdate) {
+        AnalysisSession session = new AnalysisSession();
+        Thread worker = new Thread(() -> {
+            try {
+                List<AnalysisLine> lines = getAnalysisLines(fen, limit.getDepthOr(DEFAULT_DEPTH));
+                if (!session.isStopped() && !lines.isEmpty()) {
+                    onUpdate.accept(lines);
+                }
+                session.complete(lines);
+            } catch (RuntimeException e) {
+                session.fail(e);
+            }
+        }, "analysis");
+        worker.setDaemon(true);
+        worker.start();
+        return session;
+    }
+
+    /**
+     * Starts a search for a position that belongs to a game or board the user is stepping through.
+     * Backends that can keep engine state between searches use the game id to reuse it for
+     * consecutive positions of the same game; the rest ignore it.
+     *
+     * @param gameId Identifies the game or board; null when the position stands alone.
+     */
+    default AnalysisSession startAnalysis(String gameId, String fen, SearchLimit limit,
+                                          Consumer<List<AnalysisLine>> onUpdate) {
+        return startAnalysis(fen, limit, onUpdate);
+    }
+
+    /**
+     * How many principal variations the backend can report for one position. Backends that
+     * cannot compute alternatives report only the best line.
+     */
+    default int getMaxMultiPv() {
+        return 1;
+    }
+
+    /**
+     * How many positions the backend can usefully analyse at the same time.
+     */
+    default int getMaxParallelism() {
+        return 1;
+    }
+
+    /**
+     * Releases any processes or connections held by the backend.
+     */
+    default void shutdown() {
+    }
+}
@@ -0,0 +1,171 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Two-level cache of engine analysis keyed by Zobrist hash: an in-memory LRU in front of
+ * the analysis_cache table in chesslog.db, so results survive restarts.
+ * <p>
+ * An entry satisfies a request when it was searched at least as deep as requested and
+ * holds at least as many principal variations.
+ */
+public class AnalysisCache {
+
+    private static final int DEFAULT_MEMORY_ENTRIES = 4096;
+
+    private final Map<Long, List<AnalysisLine>> memory;
+
+    public AnalysisCache() {
+        this(DEFAULT_MEMORY_ENTRIES);
+    }
+
+    public AnalysisCache(int maxMemoryEntries) {
+        this.memory = new LinkedHashMap<>(maxMemoryEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<AnalysisLine>> eldest) {
+                return size() > maxMemoryEntries;
+            }
+        };
+    }
+
+    public List<AnalysisLine> get(long positionKey, int minDepth) {
+        return get(positionKey, minDepth, 1);
+    }
+
+    /**
+     * Looks up cached lines for a position.
+     *
+     * @param positionKey Zobrist key of the position.
+     * @param minDepth    The minimum depth the cached search must have reached.
+     * @param minLines    The minimum number of principal variations required.
+     * @return The cached lines, or null on a miss.
+     */
+    public List<AnalysisLine> get(long positionKey, int minDepth, int minLines) {
+        List<AnalysisLine> lines;
+        synchronized (memory) {
+            lines = memory.get(positionKey);
+        }
+        if (lines != null) {
+            return satisfies(lines, minDepth, minLines) ? lines : null;
+        }
+
+        lines = loadFromDatabase(positionKey);
+        if (lines.isEmpty()) {
+            return null;
+        }
+        synchronized (memory) {
+            memory.putIfAbsent(positionKey, lines);
+        }
+        return satisfies(lines, minDepth, minLines) ? lines : null;
+    }
+
+    /**
+     * Stores lines for a position unless a deeper result, or one as deep with more lines, is already cached.
+     */
+    public void put(long positionKey, List<AnalysisLine> lines) {
+        if (lines == null || lines.isEmpty()) {
+            return;
+        }
+        List<AnalysisLine> copy = Collections.unmodifiableList(new ArrayList<>(lines));
+        synchronized (memory) {
+            List<AnalysisLine> existing = memory.get(positionKey);
+            if (existing != null && isBetter(depthOf(existing), existing.size(), copy)) {
+                return;
+            }
+            memory.put(positionKey, copy);
+        }
+        saveToDatabase(positionKey, copy);
+    }
+
+    private static int depthOf(List<AnalysisLine> lines) {
+        return lines.isEmpty() ? 0 : lines.get(0).getDepth();
+    }
+
+    private static boolean satisfies(List<AnalysisLine> lines, int minDepth, int minLines) {
+        return depthOf(lines) >= minDepth && lines.size() >= minLines;
+    }
+
+    private static boolean isBetter(int depth, int lineCount, List<AnalysisLine> candidate) {
+        return depth > depthOf(candidate) || (depth == depthOf(candidate) && lineCount > candidate.size());
+    }
+
+    private List<AnalysisLine> loadFromDatabase(long positionKey) {
+        List<AnalysisLine> lines = new ArrayList<>();
+        String sql = "SELECT line_rank, evaluation, best_move, pv, is_mate, depth FROM analysis_cache WHERE position_key = ? ORDER BY line_rank";
+        try (Connection conn = DatabaseService.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, positionKey);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    lines.add(new AnalysisLine(
+                            rs.getString("evaluation"),
+                            rs.getString("best_move"),
+                            rs.getString("pv"),
+                            rs.getInt("is_mate") != 0,
+                            rs.getInt("depth"),
+                            rs.getInt("line_rank"),
+                            null));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to read analysis cache: " + e.getMessage());
+        }
+        return lines;
+    }
+
+    private void saveToDatabase(long positionKey, List<AnalysisLine> lines) {
+        String depthSql = "SELECT MAX(depth), COUNT(*) FROM analysis_cache WHERE position_key = ?";
+        String deleteSql = "DELETE FROM analysis_cache WHERE position_key = ?";
+        String insertSql = """
+            INSERT INTO analysis_cache (position_key, line_rank, depth, evaluation, best_move, pv, is_mate)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+        try (Connection conn = DatabaseService.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement depthQuery = conn.prepareStatement(depthSql);
+                 PreparedStatement delete = conn.prepareStatement(deleteSql);
+                 PreparedStatement insert = conn.prepareStatement(insertSql)) {
+                depthQuery.setLong(1, positionKey);
+                try (ResultSet rs = depthQuery.executeQuery()) {
+                    if (rs.next() && isBetter(rs.getInt(1), rs.getInt(2), lines)) {
+                        conn.rollback();
+                        return;
+                    }
+                }
+
+                delete.setLong(1, positionKey);
+                delete.executeUpdate();
+
+                for (int i = 0; i < lines.size(); i++) {
+                    AnalysisLine line = lines.get(i);
+                    insert.setLong(1, positionKey);
+                    insert.setInt(2, i + 1);
+                    insert.setInt(3, line.getDepth());
+                    insert.setString(4, line.getEvaluation());
+                    insert.setString(5, line.getBestMove());
+                    insert.setString(6, line.getContinuation());
+                    insert.setInt(7, line.isMate() ? 1 : 0);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to write analysis cache: " + e.getMessage());
+        }
+    }
+}
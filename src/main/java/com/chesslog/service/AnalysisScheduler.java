@@ -0,0 +1,166 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.SearchLimit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules analysis for a single board so that only the position the user is looking at
+ * gets engine time.
+ * <p>
+ * Every submitted position gets an id. A new submission supersedes the previous one: a
+ * pending request is dropped, a running search is stopped, and results tagged with an old
+ * id are never delivered. Rapid submissions are debounced, and at most one search is in
+ * flight at a time.
+ */
+public class AnalysisScheduler {
+
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 150;
+
+    /**
+     * Receives results for the position that is current when they are delivered.
+     */
+    public interface Listener {
+        void onUpdate(long positionId, List<AnalysisLine> lines);
+
+        void onFinished(long positionId, List<AnalysisLine> lines);
+    }
+
+    private final AnalysisBackend backend;
+    private final Executor callbackExecutor;
+    private final long debounceMillis;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "analysis-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long currentPositionId = 0;
+    private long lastSubmitNanos = 0;
+    private ScheduledFuture<?> pendingStart;
+    private AnalysisSession runningSession;
+
+    /**
+     * @param backend          The backend to run searches on.
+     * @param callbackExecutor Where listener callbacks run, e.g. the JavaFX application thread.
+     */
+    public AnalysisScheduler(AnalysisBackend backend, Executor callbackExecutor) {
+        this(backend, callbackExecutor, DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    public AnalysisScheduler(AnalysisBackend backend, Executor callbackExecutor, long debounceMillis) {
+        this.backend = backend;
+        this.callbackExecutor = callbackExecutor;
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Requests analysis of a position, superseding any earlier request. The first request after
+     * a quiet period starts immediately; requests arriving in quick succession are debounced.
+     *
+     * @return The id that results for this position will be tagged with.
+     */
+    public synchronized long submit(String fen, SearchLimit limit, Listener listener) {
+        return submit(null, fen, limit, listener);
+    }
+
+    /**
+     * Requests analysis of a position from a game the user is stepping through, letting the
+     * backend keep engine state between positions of the same game.
+     *
+     * @param gameId Identifies the game or board the position belongs to.
+     */
+    public synchronized long submit(String gameId, String fen, SearchLimit limit, Listener listener) {
+        long positionId = supersede();
+
+        long now = System.nanoTime();
+        long sinceLastSubmit = TimeUnit.NANOSECONDS.toMillis(now - lastSubmitNanos);
+        lastSubmitNanos = now;
+        long delay = sinceLastSubmit >= debounceMillis ? 0 : debounceMillis;
+
+        pendingStart = timer.schedule(() -> start(positionId, gameId, fen, limit, listener), delay, TimeUnit.MILLISECONDS);
+        return positionId;
+    }
+
+    /**
+     * Stops any pending or running analysis without starting a new one.
+     */
+    public synchronized void cancel() {
+        supersede();
+    }
+
+    public synchronized long getCurrentPositionId() {
+        return currentPositionId;
+    }
+
+    public void shutdown() {
+        cancel();
+        timer.shutdownNow();
+    }
+
+    private long supersede() {
+        currentPositionId++;
+        if (pendingStart != null) {
+            pendingStart.cancel(false);
+            pendingStart = null;
+        }
+        if (runningSession != null) {
+            runningSession.stop();
+        }
+        return currentPositionId;
+    }
+
+    private synchronized void start(long positionId, String gameId, String fen, SearchLimit limit, Listener listener) {
+        if (positionId != currentPositionId) {
+            return;
+        }
+
+        // Keep a single search in flight: wait for the superseded one to wind down first
+        AnalysisSession previous = runningSession;
+        if (previous != null && !previous.getResult().isDone()) {
+            previous.getResult().whenComplete((lines, error) -> start(positionId, gameId, fen, limit, listener));
+            return;
+        }
+
+        AnalysisSession session = backend.startAnalysis(gameId, fen, limit, lines -> {
+            List<AnalysisLine> display = withSan(fen, lines);
+            deliver(positionId, () -> listener.onUpdate(positionId, display));
+        });
+        runningSession = session;
+        session.getResult().whenComplete((lines, error) -> {
+            if (error != null) {
+                System.err.println("Analysis failed: " + error.getMessage());
+            }
+            List<AnalysisLine> result = lines != null ? withSan(fen, lines) : List.of();
+            deliver(positionId, () -> listener.onFinished(positionId, result));
+        });
+    }
+
+    /**
+     * Converts each line's principal variation to SAN off the UI thread.
+     */
+    private static List<AnalysisLine> withSan(String fen, List<AnalysisLine> lines) {
+        List<AnalysisLine> converted = new ArrayList<>(lines.size());
+        for (AnalysisLine line : lines) {
+            converted.add(line.getSanContinuation() != null ? line
+                    : line.withSanContinuation(SanConverter.toSan(fen, line.getContinuation())));
+        }
+        return converted;
+    }
+
+    private void deliver(long positionId, Runnable callback) {
+        callbackExecutor.execute(() -> {
+            // Drop results for positions the user has already moved away from
+            if (positionId == getCurrentPositionId()) {
+                callback.run();
+            }
+        });
+    }
+}
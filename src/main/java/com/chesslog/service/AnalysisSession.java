@@ -0,0 +1,54 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handle on a running streaming analysis. The result completes with the last lines the
+ * search produced, whether it finished on its own or was stopped.
+ */
+public class AnalysisSession {
+
+    private final CompletableFuture<List<AnalysisLine>> result = new CompletableFuture<>();
+    private Runnable stopAction;
+    private boolean stopped = false;
+
+    /**
+     * Asks the search to stop. Safe to call more than once and from any thread.
+     */
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        if (stopAction != null) {
+            stopAction.run();
+        }
+    }
+
+    public synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    public CompletableFuture<List<AnalysisLine>> getResult() {
+        return result;
+    }
+
+    /**
+     * Sets how to interrupt the underlying search, or clears it with null once the search is over
+     * so a late stop cannot reach a resource that has been handed to someone else.
+     */
+    synchronized void setStopAction(Runnable stopAction) {
+        this.stopAction = stopAction;
+    }
+
+    void complete(List<AnalysisLine> lines) {
+        result.complete(lines);
+    }
+
+    void fail(Throwable error) {
+        result.completeExceptionally(error);
+    }
+}
@@ -0,0 +1,213 @@
+package com.chesslog.service;
+
+import com.chesslog.model.ChessGame;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the local collection in step with a Chess.com account without re-downloading history.
+ * <p>
+ * The archive_sync ledger records, per user and monthly archive, the validators and game count
+ * from the last fetch. Archives synced after their month ended cannot change and are skipped;
+ * the rest are fetched with conditional headers, so an unchanged month costs a 304. Only games
+ * not yet in the collection are inserted.
+ */
+public class ArchiveSyncService {
+
+    private static final Pattern ARCHIVE_MONTH = Pattern.compile("/games/(\\d{4})/(\\d{2})/?$");
+
+    /**
+     * Totals for one sync run.
+     */
+    public static class SyncResult {
+        private final int archivesChecked;
+        private final int archivesFetched;
+        private final int gamesInserted;
+
+        SyncResult(int archivesChecked, int archivesFetched, int gamesInserted) {
+            this.archivesChecked = archivesChecked;
+            this.archivesFetched = archivesFetched;
+            this.gamesInserted = gamesInserted;
+        }
+
+        /**
+         * Archives that needed a request, including those answered with 304.
+         */
+        public int getArchivesChecked() {
+            return archivesChecked;
+        }
+
+        /**
+         * Archives whose body was downloaded because they changed.
+         */
+        public int getArchivesFetched() {
+            return archivesFetched;
+        }
+
+        public int getGamesInserted() {
+            return gamesInserted;
+        }
+    }
+
+    private static class LedgerEntry {
+        String etag;
+        String lastModified;
+        boolean complete;
+    }
+
+    private final ChessComApiService chessComApiService;
+    private final DatabaseService databaseService;
+
+    public ArchiveSyncService(ChessComApiService chessComApiService, DatabaseService databaseService) {
+        this.chessComApiService = chessComApiService;
+        this.databaseService = databaseService;
+    }
+
+    /**
+     * Brings the collection up to date with the user's Chess.com games.
+     */
+    public SyncResult syncUser(String username) throws SQLException {
+        String user = username.toLowerCase();
+        List<String> archiveUrls = chessComApiService.fetchArchiveUrls(user);
+        Map<String, LedgerEntry> ledger = loadLedger(user);
+        Set<String> savedIds = databaseService.getSavedGameIds();
+        YearMonth currentMonth = YearMonth.now(ZoneOffset.UTC);
+
+        int checked = 0;
+        int fetched = 0;
+        int inserted = 0;
+        for (String archiveUrl : archiveUrls) {
+            LedgerEntry entry = ledger.get(archiveUrl);
+            if (entry != null && entry.complete) {
+                continue;
+            }
+
+            checked++;
+            // New games are saved in batches while the archive is still downloading
+            List<ChessGame> pending = new ArrayList<>();
+            int[] insertedFromArchive = {0};
+            boolean[] saveFailed = {false};
+            ChessComApiService.ArchiveFetch result = chessComApiService.fetchArchiveIfModified(
+                    archiveUrl, entry != null ? entry.etag : null, entry != null ? entry.lastModified : null,
+                    game -> {
+                        if (game.getUrl() == null || !savedIds.add(game.getUrl())) {
+                            return;
+                        }
+                        pending.add(game);
+                        if (pending.size() >= DatabaseService.DEFAULT_BATCH_SIZE) {
+                            insertedFromArchive[0] += flush(pending, user, saveFailed);
+                        }
+                    });
+            insertedFromArchive[0] += flush(pending, user, saveFailed);
+            inserted += insertedFromArchive[0];
+            // Leave the ledger alone after a failure so the archive is fetched in full next time
+            if (result == null || saveFailed[0]) {
+                continue;
+            }
+
+            boolean complete = isPastMonth(archiveUrl, currentMonth);
+            if (result.isNotModified()) {
+                markSynced(user, archiveUrl, complete);
+                continue;
+            }
+
+            fetched++;
+            saveLedgerEntry(user, archiveUrl, result, complete);
+        }
+        return new SyncResult(checked, fetched, inserted);
+    }
+
+    private int flush(List<ChessGame> pending, String username, boolean[] saveFailed) {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        try {
+            return databaseService.saveGames(pending, username).getInserted();
+        } catch (SQLException e) {
+            System.err.println("Failed to save synced games: " + e.getMessage());
+            saveFailed[0] = true;
+            return 0;
+        } finally {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Whether the archive's month was over at the given time. Archives with an unrecognised
+     * URL are treated as still open so they keep being checked.
+     */
+    static boolean isPastMonth(String archiveUrl, YearMonth currentMonth) {
+        Matcher matcher = ARCHIVE_MONTH.matcher(archiveUrl);
+        if (!matcher.find()) {
+            return false;
+        }
+        YearMonth archiveMonth = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+        return archiveMonth.isBefore(currentMonth);
+    }
+
+    private static Map<String, LedgerEntry> loadLedger(String username) throws SQLException {
+        Map<String, LedgerEntry> ledger = new HashMap<>();
+        String sql = "SELECT archive_url, etag, last_modified, complete FROM archive_sync WHERE username = ?";
+        try (Connection conn = DatabaseService.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    LedgerEntry entry = new LedgerEntry();
+                    entry.etag = rs.getString("etag");
+                    entry.lastModified = rs.getString("last_modified");
+                    entry.complete = rs.getInt("complete") != 0;
+                    ledger.put(rs.getString("archive_url"), entry);
+                }
+            }
+        }
+        return ledger;
+    }
+
+    private static void saveLedgerEntry(String username, String archiveUrl, ChessComApiService.ArchiveFetch result,
+                                        boolean complete) throws SQLException {
+        String sql = """
+            INSERT INTO archive_sync (username, archive_url, etag, last_modified, game_count, complete, synced_at)
+            VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT(username, archive_url) DO UPDATE SET
+                etag = excluded.etag,
+                last_modified = excluded.last_modified,
+                game_count = excluded.game_count,
+                complete = excluded.complete,
+                synced_at = excluded.synced_at;
+            """;
+        try (Connection conn = DatabaseService.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            pstmt.setString(2, archiveUrl);
+            pstmt.setString(3, result.getEtag());
+            pstmt.setString(4, result.getLastModified());
+            pstmt.setInt(5, result.getGameCount());
+            pstmt.setInt(6, complete ? 1 : 0);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static void markSynced(String username, String archiveUrl, boolean complete) throws SQLException {
+        String sql = "UPDATE archive_sync SET complete = ?, synced_at = CURRENT_TIMESTAMP WHERE username = ? AND archive_url = ?";
+        try (Connection conn = DatabaseService.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, complete ? 1 : 0);
+            pstmt.setString(2, username);
+            pstmt.setString(3, archiveUrl);
+            pstmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.SearchLimit;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Serves analysis from an {@link AnalysisCache} when a deep enough result is known and
+ * otherwise forwards to the wrapped backend, caching whatever it returns.
+ */
+public class CachedAnalysisBackend implements AnalysisBackend {
+
+    private final AnalysisBackend delegate;
+    private final AnalysisCache cache;
+    private final ZobristHasher hasher;
+
+    public CachedAnalysisBackend(AnalysisBackend delegate, AnalysisCache cache) {
+        this(delegate, cache, ZobristHasher.DEFAULT);
+    }
+
+    public CachedAnalysisBackend(AnalysisBackend delegate, AnalysisCache cache, ZobristHasher hasher) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.hasher = hasher;
+    }
+
+    public AnalysisBackend getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public List<AnalysisLine> getAnalysisLines(String fen, int depth) {
+        long positionKey = hasher.hash(fen);
+        List<AnalysisLine> cached = cache.get(positionKey, depth);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<AnalysisLine> lines = delegate.getAnalysisLines(fen, depth);
+        cache.put(positionKey, lines);
+        return lines;
+    }
+
+    /**
+     * A cached result that already satisfies a depth limit and line count ends the search immediately.
+     * Otherwise any cached lines are shown straight away and engine updates are held back until they are deeper.
+     */
+    @Override
+    public AnalysisSession startAnalysis(String fen, SearchLimit limit, Consumer<List<AnalysisLine>> onUpdate) {
+        return startAnalysis(null, fen, limit, onUpdate);
+    }
+
+    @Override
+    public AnalysisSession startAnalysis(String gameId, String fen, SearchLimit limit,
+                                         Consumer<List<AnalysisLine>> onUpdate) {
+        long positionKey = hasher.hash(fen);
+        int requiredDepth = limit.getType() == SearchLimit.Type.DEPTH ? (int) limit.getValue() : Integer.MAX_VALUE;
+        int requiredLines = Math.min(limit.getMultiPv(), delegate.getMaxMultiPv());
+
+        Consumer<List<AnalysisLine>> forward = onUpdate;
+        List<AnalysisLine> cached = cache.get(positionKey, 0);
+        if (cached != null) {
+            // The position may have been cached with more lines than are wanted now
+            if (cached.size() > requiredLines) {
+                cached = cached.subList(0, requiredLines);
+            }
+            if (cached.get(0).getDepth() >= requiredDepth && cached.size() >= requiredLines) {
+                AnalysisSession session = new AnalysisSession();
+                onUpdate.accept(cached);
+                session.complete(cached);
+                return session;
+            }
+            onUpdate.accept(cached);
+            int cachedDepth = cached.get(0).getDepth();
+            forward = lines -> {
+                if (!lines.isEmpty() && lines.get(0).getDepth() >= cachedDepth) {
+                    onUpdate.accept(lines);
+                }
+            };
+        }
+
+        AnalysisSession session = delegate.startAnalysis(gameId, fen, limit, forward);
+        session.getResult().thenAccept(lines -> cache.put(positionKey, lines));
+        return session;
+    }
+
+    @Override
+    public int getMaxMultiPv() {
+        return delegate.getMaxMultiPv();
+    }
+
+    @Override
+    public int getMaxParallelism() {
+        return delegate.getMaxParallelism();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+}
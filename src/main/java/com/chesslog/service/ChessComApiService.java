@@ -1,21 +1,28 @@
 package com.chesslog.service;
 
 import com.chesslog.model.ChessGame;
-import com.chesslog.model.MonthlyArchive;
 import com.chesslog.model.UserArchive;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
-import com.github.bhlangonijr.chesslib.pgn.PgnHolder; 
-import com.github.bhlangonijr.chesslib.game.Game;
-
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * Service to fetch PGN archives from the Chess.com Public API using OkHttp and Gson.
@@ -25,7 +32,28 @@ public class ChessComApiService {
     private final OkHttpClient client = new OkHttpClient();
     private final Gson gson = new Gson();
     private static final String API_BASE_URL = "https://api.chess.com/pub/player/";
-    private final ExecutorService executorService = Executors.newFixedThreadPool(5); 
+    // Chess.com answers bursts of parallel requests with 429, so keep archive fetches bounded
+    private static final int MAX_PARALLEL_ARCHIVES = 5;
+    private static final int MAX_RATE_LIMIT_RETRIES = 3;
+    private final ExecutorService executorService = Executors.newFixedThreadPool(MAX_PARALLEL_ARCHIVES, runnable -> {
+        Thread thread = new Thread(runnable, "chesscom-archive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Receives monthly archives as they finish downloading during a full-history import.
+     */
+    public interface ImportListener {
+        /**
+         * Called from a background thread, in completion order rather than date order.
+         *
+         * @param games         The games of one monthly archive, with PGN metadata parsed.
+         * @param archivesDone  How many archives have been fetched so far.
+         * @param totalArchives How many archives the user has.
+         */
+        void onArchiveFetched(List<ChessGame> games, int archivesDone, int totalArchives);
+    }
 
     public List<String> fetchArchiveUrls(String username) {
         String url = API_BASE_URL + username.toLowerCase() + "/games/archives";
@@ -51,23 +79,143 @@ public class ChessComApiService {
 
 
     public List<ChessGame> fetchGamesFromArchive(String archiveUrl) {
+        List<ChessGame> games = new ArrayList<>();
+        try {
+            streamGamesFromArchive(archiveUrl, games::add);
+        } catch (IOException e) {
+            System.err.println("Network error fetching monthly archive: " + e.getMessage());
+            return Collections.emptyList();
+        }
+        return games;
+    }
+
+    /**
+     * Downloads a monthly archive and hands each game to the consumer as soon as it has been
+     * decoded, so only one game is held in memory at a time and callers can start work before
+     * the download finishes.
+     *
+     * @return The number of games in the archive.
+     * @throws IOException if the request fails or the archive cannot be decoded; games decoded
+     *                     before the failure have already been passed to the consumer.
+     */
+    public int streamGamesFromArchive(String archiveUrl, Consumer<ChessGame> consumer) throws IOException {
         Request request = new Request.Builder().url(archiveUrl).build();
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful() || response.body() == null) {
-                System.err.println("Failed to fetch games from archive: " + archiveUrl);
-                return Collections.emptyList();
+        for (int attempt = 0; ; attempt++) {
+            try (Response response = client.newCall(request).execute()) {
+                if (response.code() == 429 && attempt < MAX_RATE_LIMIT_RETRIES) {
+                    // Rate limited; back off and try again
+                    Thread.sleep(1000L << attempt);
+                    continue;
+                }
+                if (!response.isSuccessful()) {
+                    throw new IOException("Failed to fetch games from archive " + archiveUrl + ". Status: " + response.code());
+                }
+                return readArchive(response, consumer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while fetching " + archiveUrl);
             }
+        }
+    }
 
-            String json = response.body().string();
+    /**
+     * Result of a conditional archive request.
+     */
+    public static class ArchiveFetch {
+        private final boolean notModified;
+        private final int gameCount;
+        private final String etag;
+        private final String lastModified;
+
+        ArchiveFetch(boolean notModified, int gameCount, String etag, String lastModified) {
+            this.notModified = notModified;
+            this.gameCount = gameCount;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * True when the server answered 304 and the archive is unchanged since the validators were issued.
+         */
+        public boolean isNotModified() {
+            return notModified;
+        }
+
+        public int getGameCount() {
+            return gameCount;
+        }
 
-            MonthlyArchive monthlyArchive = gson.fromJson(json, MonthlyArchive.class);
-            return monthlyArchive.getGames();
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
 
+    /**
+     * Fetches a monthly archive only if it changed since the given validators were seen,
+     * streaming its games to the consumer.
+     *
+     * @param etag         The ETag from the previous fetch, or null.
+     * @param lastModified The Last-Modified value from the previous fetch, or null.
+     * @return The fetch result, or null if the request failed.
+     */
+    public ArchiveFetch fetchArchiveIfModified(String archiveUrl, String etag, String lastModified,
+                                               Consumer<ChessGame> consumer) {
+        Request.Builder builder = new Request.Builder().url(archiveUrl);
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+
+        try (Response response = client.newCall(builder.build()).execute()) {
+            if (response.code() == 304) {
+                return new ArchiveFetch(true, 0, etag, lastModified);
+            }
+            if (!response.isSuccessful()) {
+                System.err.println("Failed to sync archive " + archiveUrl + ". Status: " + response.code());
+                return null;
+            }
+            int gameCount = readArchive(response, consumer);
+            return new ArchiveFetch(false, gameCount, response.header("ETag"), response.header("Last-Modified"));
         } catch (IOException e) {
-            System.err.println("Network error fetching monthly archive: " + e.getMessage());
-            return Collections.emptyList();
+            System.err.println("Network error syncing monthly archive: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Decodes {"games": [...]} straight off the response stream, one game at a time.
+     */
+    private int readArchive(Response response, Consumer<ChessGame> consumer) throws IOException {
+        int count = 0;
+        try (JsonReader reader = new JsonReader(response.body().charStream())) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("games") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    ChessGame game = gson.fromJson(reader, ChessGame.class);
+                    if (game != null) {
+                        consumer.accept(game);
+                        count++;
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new IOException("Malformed archive JSON: " + e.getMessage(), e);
         }
+        return count;
     }
 
 
@@ -93,36 +241,83 @@ public class ChessComApiService {
         return games;
     }
 
-    private void parsePgnMetadata(ChessGame chessGame) {
-        if (chessGame.getPgn() == null || chessGame.getPgn().isEmpty()) {
-            return;
+    /**
+     * Imports every game the user has played. Monthly archives are fetched in parallel, at most
+     * five at a time, and reported to the listener as they arrive.
+     *
+     * @return All games, oldest archive first and in archive order within each month.
+     */
+    public List<ChessGame> fetchFullHistoryForUser(String username, ImportListener listener) throws InterruptedException {
+        List<String> archiveUrls = fetchArchiveUrls(username);
+        if (archiveUrls == null || archiveUrls.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        PgnHolder pgnHolder = new PgnHolder("dummy.pgn");
-        pgnHolder.loadPgn(chessGame.getPgn());
-
-        try {
-            if (!pgnHolder.getGames().isEmpty()) {
-                Game gameFromPgn = pgnHolder.getGames().get(0);
-                if (gameFromPgn.getRound() != null && gameFromPgn.getRound().getEvent() != null) {
-                    chessGame.event = gameFromPgn.getRound().getEvent().getName();
-                    chessGame.site = gameFromPgn.getRound().getEvent().getSite();
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executorService);
+        List<List<ChessGame>> gamesByArchive = new ArrayList<>(Collections.nCopies(archiveUrls.size(), null));
+        List<Future<Integer>> pending = new ArrayList<>();
+        for (int i = 0; i < archiveUrls.size(); i++) {
+            final int index = i;
+            pending.add(completion.submit(() -> {
+                List<ChessGame> games = new ArrayList<>();
+                try {
+                    streamGamesFromArchive(archiveUrls.get(index), chessGame -> {
+                        parsePgnMetadata(chessGame);
+                        games.add(chessGame);
+                    });
+                } catch (IOException e) {
+                    System.err.println("Network error fetching monthly archive: " + e.getMessage());
                 }
-                chessGame.date = gameFromPgn.getDate();
+                gamesByArchive.set(index, games);
+                return index;
+            }));
+        }
 
-                if (gameFromPgn.getWhitePlayer() != null) {
-                    chessGame.whitePlayerName = gameFromPgn.getWhitePlayer().getName();
-                }
-                if (gameFromPgn.getBlackPlayer() != null) {
-                    chessGame.blackPlayerName = gameFromPgn.getBlackPlayer().getName();
+        try {
+            for (int done = 1; done <= archiveUrls.size(); done++) {
+                Future<Integer> fetched = completion.take();
+                List<ChessGame> games = Collections.emptyList();
+                try {
+                    games = gamesByArchive.get(fetched.get());
+                } catch (ExecutionException e) {
+                    System.err.println("Failed to import archive: " + e.getCause().getMessage());
                 }
-                if (gameFromPgn.getResult() != null) {
-                    chessGame.result = gameFromPgn.getResult().getDescription();
+                if (listener != null) {
+                    listener.onArchiveFetched(games, done, archiveUrls.size());
                 }
             }
-        } catch (Exception e) {
-            System.err.println("Error parsing PGN: " + e.getMessage());
-            e.printStackTrace();
+        } finally {
+            for (Future<Integer> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        // Archive URLs are listed oldest first, so concatenating them keeps date order
+        List<ChessGame> allGames = new ArrayList<>();
+        for (List<ChessGame> games : gamesByArchive) {
+            if (games != null) {
+                allGames.addAll(games);
+            }
+        }
+        return allGames;
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    private void parsePgnMetadata(ChessGame chessGame) {
+        if (chessGame.getPgn() == null || chessGame.getPgn().isEmpty()) {
+            return;
         }
+
+        // Only the header is needed here, so skip parsing the moves
+        Map<String, String> tags = PgnHeaderScanner.scan(chessGame.getPgn());
+        chessGame.event = tags.get("Event");
+        chessGame.site = tags.get("Site");
+        chessGame.date = tags.get("Date");
+        chessGame.whitePlayerName = tags.get("White");
+        chessGame.blackPlayerName = tags.get("Black");
+        chessGame.result = tags.get("Result");
     }
 }
@@ -0,0 +1,377 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.ChessGame;
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.game.Game;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+import com.github.bhlangonijr.chesslib.pgn.PgnHolder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background job that analyses every position of every saved game so the collection is
+ * pre-analysed before it is browsed.
+ * <p>
+ * Results go into the {@link AnalysisCache} as soon as each position is done, and finished games
+ * are checkpointed in the analysis_jobs table. A stopped or crashed run therefore resumes where
+ * it left off: finished games are skipped and positions already cached deep enough are not searched
+ * again. The CPU share limits how many engines the job may use at once, leaving the rest for
+ * interactive analysis.
+ * <p>
+ * Positions found in the opening book are known theory and are never searched.
+ */
+public class CollectionAnalysisJob {
+
+    private static final String STANDARD_START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final double DEFAULT_CPU_SHARE = 0.5;
+
+    /**
+     * Receives progress from the job thread.
+     */
+    public interface Listener {
+        void onProgress(Progress progress);
+
+        void onFinished(Progress progress);
+    }
+
+    /**
+     * Snapshot of how far the job has got.
+     */
+    public static class Progress {
+        private final int gamesDone;
+        private final int totalGames;
+        private final int positionsAnalysed;
+        private final int positionsSkipped;
+        private final double positionsPerSecond;
+
+        Progress(int gamesDone, int totalGames, int positionsAnalysed, int positionsSkipped, double positionsPerSecond) {
+            this.gamesDone = gamesDone;
+            this.totalGames = totalGames;
+            this.positionsAnalysed = positionsAnalysed;
+            this.positionsSkipped = positionsSkipped;
+            this.positionsPerSecond = positionsPerSecond;
+        }
+
+        public int getGamesDone() {
+            return gamesDone;
+        }
+
+        public int getTotalGames() {
+            return totalGames;
+        }
+
+        /**
+         * Positions searched by the engine in this run.
+         */
+        public int getPositionsAnalysed() {
+            return positionsAnalysed;
+        }
+
+        /**
+         * Positions found in the cache or the opening book and not searched.
+         */
+        public int getPositionsSkipped() {
+            return positionsSkipped;
+        }
+
+        public double getPositionsPerSecond() {
+            return positionsPerSecond;
+        }
+    }
+
+    private final AnalysisBackend backend;
+    private final AnalysisCache cache;
+    private final ZobristHasher hasher;
+    private final DatabaseService databaseService;
+    private final ThroughputMeter meter = new ThroughputMeter();
+    private final AtomicInteger positionsAnalysed = new AtomicInteger();
+    private final AtomicInteger positionsSkipped = new AtomicInteger();
+
+    private volatile double cpuShare = DEFAULT_CPU_SHARE;
+    private volatile PolyglotBook openingBook;
+    private boolean paused = false;
+    private boolean stopped = false;
+    private Thread worker;
+
+    /**
+     * @param backend         The uncached engine backend; the job does its own cache lookups.
+     * @param cache           Where results are stored as they complete.
+     * @param databaseService Source of the saved games.
+     */
+    public CollectionAnalysisJob(AnalysisBackend backend, AnalysisCache cache, DatabaseService databaseService) {
+        this(backend, cache, ZobristHasher.DEFAULT, databaseService);
+    }
+
+    public CollectionAnalysisJob(AnalysisBackend backend, AnalysisCache cache, ZobristHasher hasher,
+                                 DatabaseService databaseService) {
+        this.backend = backend;
+        this.cache = cache;
+        this.hasher = hasher;
+        this.databaseService = databaseService;
+    }
+
+    /**
+     * Starts the job on a low-priority background thread unless it is already running.
+     *
+     * @param depth    Search depth per position; games checkpointed at a lower depth are redone.
+     * @param listener Called from the job thread after every game and once at the end.
+     */
+    public synchronized void start(int depth, Listener listener) {
+        if (isRunning()) {
+            return;
+        }
+        paused = false;
+        stopped = false;
+        positionsAnalysed.set(0);
+        positionsSkipped.set(0);
+        meter.reset();
+
+        worker = new Thread(() -> run(depth, listener), "collection-analysis");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * Stops the job after the positions currently being searched. Progress is kept, so a later
+     * {@link #start} continues from here.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        paused = false;
+        notifyAll();
+    }
+
+    public synchronized boolean isRunning() {
+        return worker != null && worker.isAlive();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Sets the fraction of the backend's engines the job may use, from 0.1 to 1. Takes effect
+     * from the next game.
+     */
+    public void setCpuShare(double share) {
+        cpuShare = Math.max(0.1, Math.min(1.0, share));
+    }
+
+    public double getCpuShare() {
+        return cpuShare;
+    }
+
+    /**
+     * Sets the book whose positions are skipped, or null to analyse every position.
+     */
+    public void setOpeningBook(PolyglotBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    private void run(int depth, Listener listener) {
+        List<ChessGame> games;
+        try {
+            games = databaseService.getAllGames();
+        } catch (SQLException e) {
+            System.err.println("Collection analysis could not load games: " + e.getMessage());
+            listener.onFinished(progress(0, 0));
+            return;
+        }
+
+        Set<String> finished = loadFinishedGames(depth);
+        int gamesDone = 0;
+        for (ChessGame game : games) {
+            if (!awaitNotPaused()) {
+                break;
+            }
+            if (!finished.contains(game.getUrl())) {
+                List<String> fens = positionsOf(game);
+                int failed = analysePositions(fens, depth);
+                if (failed < 0) {
+                    break;
+                }
+                // Games with failed positions get no checkpoint, so the next run retries them
+                if (failed == 0) {
+                    markFinished(game.getUrl(), depth, fens.size());
+                }
+            }
+            gamesDone++;
+            listener.onProgress(progress(gamesDone, games.size()));
+        }
+        listener.onFinished(progress(gamesDone, games.size()));
+    }
+
+    /**
+     * Searches every position not already cached at the requested depth.
+     *
+     * @return The number of positions the backend returned nothing for, or -1 if the job was
+     *         stopped before all positions were done.
+     */
+    private int analysePositions(List<String> fens, int depth) {
+        AtomicInteger failed = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (String fen : fens) {
+            tasks.add(() -> {
+                if (!awaitNotPaused()) {
+                    return null;
+                }
+                PolyglotBook book = openingBook;
+                if (book != null && book.contains(fen)) {
+                    positionsSkipped.incrementAndGet();
+                    return null;
+                }
+                long positionKey = hasher.hash(fen);
+                if (cache.get(positionKey, depth) != null) {
+                    positionsSkipped.incrementAndGet();
+                    return null;
+                }
+                List<AnalysisLine> lines = backend.getAnalysisLines(fen, depth);
+                if (lines.isEmpty()) {
+                    failed.incrementAndGet();
+                } else {
+                    cache.put(positionKey, lines);
+                    positionsAnalysed.incrementAndGet();
+                    meter.record();
+                }
+                return null;
+            });
+        }
+
+        int workers = Math.max(1, Math.min(tasks.size(), (int) Math.round(cpuShare * backend.getMaxParallelism())));
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "collection-analysis-worker");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        try {
+            executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } finally {
+            executor.shutdownNow();
+        }
+        synchronized (this) {
+            return stopped ? -1 : failed.get();
+        }
+    }
+
+    /**
+     * Blocks while the job is paused.
+     *
+     * @return false once the job has been stopped.
+     */
+    private synchronized boolean awaitNotPaused() {
+        try {
+            while (paused && !stopped) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !stopped;
+    }
+
+    private Progress progress(int gamesDone, int totalGames) {
+        return new Progress(gamesDone, totalGames, positionsAnalysed.get(), positionsSkipped.get(),
+                meter.getRatePerSecond());
+    }
+
+    /**
+     * Replays a game's PGN into the FEN of every position, or returns an empty list if it cannot be parsed.
+     */
+    private static List<String> positionsOf(ChessGame game) {
+        List<String> fens = new ArrayList<>();
+        if (game.getPgn() == null || game.getPgn().isEmpty()) {
+            return fens;
+        }
+        try {
+            PgnHolder pgnHolder = new PgnHolder("collection.pgn");
+            pgnHolder.loadPgn(game.getPgn());
+            if (pgnHolder.getGames().isEmpty()) {
+                return fens;
+            }
+            Game parsed = pgnHolder.getGames().get(0);
+            MoveList moves = parsed.getHalfMoves();
+            String startFen = moves.getStartFen();
+            if (startFen == null || startFen.isEmpty()) {
+                startFen = STANDARD_START_FEN;
+            }
+
+            Board board = new Board();
+            board.loadFromFen(startFen);
+            fens.add(board.getFen());
+            for (int i = 0; i < moves.size(); i++) {
+                board.doMove(moves.get(i));
+                if (board.isMated() || board.isStaleMate()) {
+                    break;
+                }
+                fens.add(board.getFen());
+            }
+        } catch (Exception e) {
+            System.err.println("Skipping unreadable game " + game.getUrl() + ": " + e.getMessage());
+        }
+        return fens;
+    }
+
+    private static Set<String> loadFinishedGames(int depth) {
+        Set<String> finished = new HashSet<>();
+        String sql = "SELECT pgn_id FROM analysis_jobs WHERE depth >= ?";
+        try (Connection conn = DatabaseService.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, depth);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    finished.add(rs.getString("pgn_id"));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to read analysis checkpoints: " + e.getMessage());
+        }
+        return finished;
+    }
+
+    private static void markFinished(String pgnId, int depth, int positions) {
+        String sql = """
+            INSERT INTO analysis_jobs (pgn_id, depth, positions, finished_at)
+            VALUES (?, ?, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT(pgn_id) DO UPDATE SET
+                depth = excluded.depth,
+                positions = excluded.positions,
+                finished_at = excluded.finished_at;
+            """;
+        try (Connection conn = DatabaseService.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, pgnId);
+            pstmt.setInt(2, depth);
+            pstmt.setInt(3, positions);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Failed to checkpoint analysis of " + pgnId + ": " + e.getMessage());
+        }
+    }
+}
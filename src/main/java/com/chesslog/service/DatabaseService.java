@@ -1,12 +1,28 @@
 package com.chesslog.service;
 
 import com.chesslog.model.ChessGame;
+import com.chesslog.model.ExplorerMove;
+import com.github.bhlangonijr.chesslib.move.MoveList;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 //Manages the connection and schema creation for the local SQLite database.
 public class DatabaseService {
@@ -14,15 +30,125 @@ public class DatabaseService {
     private static final String DB_NAME = "chesslog.db";
 
     private static final String JDBC_URL = "jdbc:sqlite:" + DB_NAME;
+    private static volatile String jdbcUrl = JDBC_URL;
 
+    // One per PersistenceQueue reader thread, plus room for the short cache and explorer lookups
+    // made from analysis workers and the FX thread
+    private static final int READER_COUNT = PersistenceQueue.READER_THREADS + 2;
 
+    private static final String STANDARD_START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final String POSITION_INDEX_FILE = "positions.idx";
+    private static Path positionIndexFile = Paths.get(POSITION_INDEX_FILE);
+    // Games changed since the position index file was written, above which it is compacted
+    private static final int MAX_PENDING_INDEXED_GAMES = 2000;
+    private static PositionIndex positionIndex;
+    // Set while a rebuild or compaction of the position index runs in the background
+    private static final AtomicBoolean positionIndexBusy = new AtomicBoolean();
+
+    // pgn_id of every saved game, loaded once and then kept in step by the write path
+    private static Set<String> savedGameIds;
+
+    private static SqliteConnectionPool writer;
+    private static SqliteConnectionPool readers;
+
+    // Set while move_tree is first filled in the background; writers wait for it to count down
+    private static volatile CountDownLatch moveTreeBuild;
+    private static volatile boolean moveTreeReady;
+
+    /**
+     * Leases the single writer connection; close it to hand it back. Other writers wait until
+     * it is returned, so do not call this again before closing the first one. While the explorer
+     * statistics are first built this waits for the build, which holds the writer, to finish.
+     */
     public static Connection getConnection() throws SQLException {
+        CountDownLatch build = moveTreeBuild;
+        if (build != null) {
+            try {
+                build.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for the explorer statistics to be built", e);
+            }
+        }
+        return writerPool().lease();
+    }
+
+    /**
+     * Leases one of the read-only connections. Under WAL these never wait for the writer.
+     */
+    public static Connection getReadConnection() throws SQLException {
+        return readerPool().lease();
+    }
+
+    private static synchronized SqliteConnectionPool writerPool() throws SQLException {
+        openPools();
+        return writer;
+    }
+
+    private static synchronized SqliteConnectionPool readerPool() throws SQLException {
+        openPools();
+        return readers;
+    }
 
-        return DriverManager.getConnection(JDBC_URL);
+    private static void openPools() throws SQLException {
+        if (writer != null) {
+            return;
+        }
+        // Opened first so WAL mode is in place before the readers attach
+        writer = new SqliteConnectionPool("writer", jdbcUrl, 1, false);
+        try {
+            readers = new SqliteConnectionPool("reader", jdbcUrl, READER_COUNT, true);
+        } catch (SQLException e) {
+            writer.close();
+            writer = null;
+            throw e;
+        }
     }
 
+    /**
+     * Closes the pooled connections. Call once when the application exits.
+     */
+    public static synchronized void shutdown() {
+        if (positionIndex != null) {
+            try {
+                // Skipped while a background rebuild runs; the fingerprint then triggers one at next start
+                if (positionIndex.getPendingGameCount() > 0 && positionIndexBusy.compareAndSet(false, true)) {
+                    try {
+                        long[] fingerprint = collectionFingerprint();
+                        positionIndex.compact(fingerprint[0], fingerprint[1]);
+                    } finally {
+                        positionIndexBusy.set(false);
+                    }
+                }
+                positionIndex.close();
+            } catch (SQLException | IOException e) {
+                System.err.println("Failed to save position index: " + e.getMessage());
+            }
+            positionIndex = null;
+        }
+        savedGameIds = null;
+        moveTreeReady = false;
+        if (writer != null) {
+            writer.close();
+            readers.close();
+            writer = null;
+            readers = null;
+        }
+    }
+
+    /**
+     * Closes the current database and points the service at another one, such as a scratch
+     * database in a test. Call {@link #initializeDatabase()} afterwards.
+     */
+    static synchronized void useDatabase(String url, Path indexFile) {
+        shutdown();
+        jdbcUrl = url;
+        positionIndexFile = indexFile;
+    }
 
     public static void initializeDatabase() {
+        boolean buildMoveTree = false;
         try (Connection conn = getConnection();
              Statement stmt = conn.createStatement()) {
 
@@ -55,19 +181,380 @@ public class DatabaseService {
             } catch (SQLException e) {
                 // Column likely already exists, ignore
             }
+
+            // Opening name, taken from the Opening tag or Chess.com's ECOUrl
+            try {
+                stmt.execute("ALTER TABLE games ADD COLUMN opening TEXT;");
+                backfillOpenings(conn);
+            } catch (SQLException e) {
+                // Column likely already exists, ignore
+            }
+
+            // Moves packed by MoveCodec, so opening a game skips the PGN parser
+            try {
+                stmt.execute("ALTER TABLE games ADD COLUMN moves BLOB;");
+                backfillMoves(conn);
+            } catch (SQLException e) {
+                // Column likely already exists, ignore
+            }
+
+            // Variations saved from a game keep only their own moves; see Variations
+            try {
+                stmt.execute("ALTER TABLE games ADD COLUMN parent_id TEXT;");
+                stmt.execute("ALTER TABLE games ADD COLUMN branch_ply INTEGER;");
+            } catch (SQLException e) {
+                // Columns likely already exist, ignore
+            }
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_games_parent ON games (parent_id) WHERE parent_id IS NOT NULL;");
+
+            createSearchIndex(stmt);
+            buildMoveTree = needsMoveTree(stmt);
+
+            // Keyset paging in getGameSummaries walks this index; it needs dates to be non-null
+            stmt.execute("UPDATE games SET date = '' WHERE date IS NULL;");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_games_date ON games (date DESC, pgn_id DESC);");
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS analysis_cache (
+                    position_key INTEGER NOT NULL,     -- Zobrist hash, move counters ignored
+                    line_rank INTEGER NOT NULL,        -- 1 for the principal variation
+                    depth INTEGER NOT NULL,
+                    evaluation TEXT,
+                    best_move TEXT,
+                    pv TEXT,
+                    is_mate INTEGER NOT NULL DEFAULT 0,
+                    PRIMARY KEY (position_key, line_rank)
+                );
+                """);
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS archive_sync (
+                    username TEXT NOT NULL,
+                    archive_url TEXT NOT NULL,         -- Chess.com monthly archive
+                    etag TEXT,
+                    last_modified TEXT,
+                    game_count INTEGER NOT NULL DEFAULT 0,
+                    complete INTEGER NOT NULL DEFAULT 0, -- Synced after the month ended, never changes again
+                    synced_at TEXT,
+                    PRIMARY KEY (username, archive_url)
+                );
+                """);
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS analysis_jobs (
+                    pgn_id TEXT PRIMARY KEY,           -- Game fully analysed by the collection job
+                    depth INTEGER NOT NULL,
+                    positions INTEGER NOT NULL,
+                    finished_at TEXT
+                );
+                """);
             
             System.out.println("Database and 'games' table initialized successfully.");
 
+            checkPositionIndex(conn);
+            savedGameIds();
+
         } catch (SQLException e) {
             System.err.println("Database initialization error: " + e.getMessage());
             e.printStackTrace();
         }
+        if (buildMoveTree) {
+            startMoveTreeBuild();
+        }
     }
 
-    public void saveGame(ChessGame game, String username) throws SQLException {
-        String sql = """
-        INSERT INTO games (pgn_id, username, event, site, date, round, white, black, result, eco, termination, time_control, white_elo, black_elo, pgn, note)
-        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    /**
+     * Creates the games_fts full-text index over games and the triggers that keep it in step.
+     * The index stores no text of its own (content='games'); it is filled once when first created.
+     */
+    private static void createSearchIndex(Statement stmt) throws SQLException {
+        boolean exists;
+        try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'games_fts'")) {
+            exists = rs.next();
+        }
+
+        stmt.execute("""
+            CREATE VIRTUAL TABLE IF NOT EXISTS games_fts USING fts5(
+                white, black, event, eco, opening, note,
+                content = 'games', content_rowid = 'id',
+                tokenize = 'unicode61 remove_diacritics 2',
+                prefix = '2 3'
+            );
+            """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS games_fts_insert AFTER INSERT ON games BEGIN
+                INSERT INTO games_fts (rowid, white, black, event, eco, opening, note)
+                VALUES (new.id, new.white, new.black, new.event, new.eco, new.opening, new.note);
+            END;
+            """);
+        stmt.execute("""
+            CREATE TRIGGER IF NOT EXISTS games_fts_delete AFTER DELETE ON games BEGIN
+                INSERT INTO games_fts (games_fts, rowid, white, black, event, eco, opening, note)
+                VALUES ('delete', old.id, old.white, old.black, old.event, old.eco, old.opening, old.note);
+            END;
+            """);
+        // Only changes to indexed columns need to touch the index
+        stmt.execute("DROP TRIGGER IF EXISTS games_fts_update");
+        stmt.execute("""
+            CREATE TRIGGER games_fts_update AFTER UPDATE OF white, black, event, eco, opening, note ON games BEGIN
+                INSERT INTO games_fts (games_fts, rowid, white, black, event, eco, opening, note)
+                VALUES ('delete', old.id, old.white, old.black, old.event, old.eco, old.opening, old.note);
+                INSERT INTO games_fts (rowid, white, black, event, eco, opening, note)
+                VALUES (new.id, new.white, new.black, new.event, new.eco, new.opening, new.note);
+            END;
+            """);
+
+        if (!exists) {
+            // Index games saved before search existed
+            stmt.execute("INSERT INTO games_fts (games_fts) VALUES ('rebuild')");
+        }
+    }
+
+    /**
+     * Checks for the move_tree explorer statistics. When the table is missing, writers are held
+     * back from here until {@link #startMoveTreeBuild()} has created and filled it.
+     */
+    private static boolean needsMoveTree(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'move_tree'")) {
+            if (rs.next()) {
+                moveTreeReady = true;
+                return false;
+            }
+        }
+        moveTreeBuild = new CountDownLatch(1);
+        return true;
+    }
+
+    /**
+     * Fills move_tree from the saved games on a background thread that holds the writer
+     * connection, so saves queue behind it. The table is created in the same transaction,
+     * so a build that fails or is cut short runs again at the next start; until then the
+     * write path leaves the statistics alone.
+     */
+    private static void startMoveTreeBuild() {
+        Thread thread = new Thread(() -> {
+            System.out.println("Building opening explorer statistics from saved games...");
+            try (Connection conn = writerPool().lease();
+                 Statement stmt = conn.createStatement()) {
+                conn.setAutoCommit(false);
+                try {
+                    stmt.execute(MoveTree.CREATE_TABLE_SQL);
+                    MoveTree.rebuild(conn);
+                    conn.commit();
+                    moveTreeReady = true;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                System.err.println("Building explorer statistics failed: " + e.getMessage());
+            } finally {
+                CountDownLatch build = moveTreeBuild;
+                moveTreeBuild = null;
+                build.countDown();
+            }
+        }, "move-tree-build");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Writes a transaction's changes to the explorer statistics, once they have been built.
+     */
+    private static void applyMoveTree(Connection conn, MoveTree.Changes changes) throws SQLException {
+        if (moveTreeReady) {
+            changes.apply(conn);
+        }
+    }
+
+    private static void backfillOpenings(Connection conn) throws SQLException {
+        try (Statement select = conn.createStatement();
+             ResultSet rs = select.executeQuery("SELECT id, pgn FROM games");
+             PreparedStatement update = conn.prepareStatement("UPDATE games SET opening = ? WHERE id = ?")) {
+            while (rs.next()) {
+                update.setString(1, openingName(PgnHeaderScanner.scan(rs.getString("pgn"))));
+                update.setLong(2, rs.getLong("id"));
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+    }
+
+    /**
+     * Encodes the moves of games saved before the moves column existed, so reads never write.
+     * Games whose PGN cannot be parsed get an empty blob, which {@link MoveCodec#decode} rejects,
+     * so readers fall back to the PGN.
+     */
+    private static void backfillMoves(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement select = conn.createStatement();
+             ResultSet rs = select.executeQuery("SELECT id, pgn FROM games WHERE moves IS NULL");
+             PreparedStatement update = conn.prepareStatement("UPDATE games SET moves = ? WHERE id = ?")) {
+            while (rs.next()) {
+                byte[] moves = MoveCodec.encodePgn(rs.getString("pgn"));
+                update.setBytes(1, moves != null ? moves : new byte[0]);
+                update.setLong(2, rs.getLong("id"));
+                update.addBatch();
+            }
+            update.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * The opening from the Opening tag, or from the last segment of Chess.com's ECOUrl tag
+     * (".../openings/Sicilian-Defense-Najdorf-Variation").
+     */
+    static String openingName(Map<String, String> tags) {
+        String opening = tags.get("Opening");
+        if (opening != null && !opening.isBlank()) {
+            return opening;
+        }
+        String ecoUrl = tags.get("ECOUrl");
+        if (ecoUrl == null || ecoUrl.isBlank()) {
+            return "";
+        }
+        return ecoUrl.substring(ecoUrl.lastIndexOf('/') + 1).replace('-', ' ');
+    }
+
+    private static synchronized PositionIndex positionIndex() {
+        if (positionIndex == null) {
+            positionIndex = PositionIndex.open(positionIndexFile, ZobristHasher.DEFAULT);
+        }
+        return positionIndex;
+    }
+
+    /**
+     * Game count and sum of game ids, which together tell whether the position index is current.
+     */
+    private static long[] collectionFingerprint(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*), COALESCE(SUM(id), 0) FROM games")) {
+            rs.next();
+            return new long[]{rs.getLong(1), rs.getLong(2)};
+        }
+    }
+
+    private static long[] collectionFingerprint() throws SQLException {
+        try (Connection conn = getReadConnection()) {
+            return collectionFingerprint(conn);
+        }
+    }
+
+    private static void checkPositionIndex(Connection conn) throws SQLException {
+        long[] fingerprint = collectionFingerprint(conn);
+        if (!positionIndex().matches(fingerprint[0], fingerprint[1])) {
+            System.out.println("Position index is out of date; rebuilding in the background.");
+            runPositionIndexTask(DatabaseService::rebuildPositionIndex);
+        }
+    }
+
+    /**
+     * Rebuilds the position index from every saved game, replaying them in parallel. The read
+     * transaction lasts the whole rebuild, so it runs on its own connection rather than a pooled one.
+     */
+    public static void rebuildPositionIndex() throws SQLException, IOException {
+        try (Connection conn = SqliteConnectionPool.open(jdbcUrl, true)) {
+            // One read transaction, so the fingerprint describes exactly the rows indexed
+            conn.setAutoCommit(false);
+            long[] fingerprint = collectionFingerprint(conn);
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT id, pgn_id, pgn, parent_id FROM games")) {
+                positionIndex().rebuild(consumer -> {
+                    while (rs.next()) {
+                        // Variations are stored from their branch position but indexed in full
+                        String pgn = Variations.fullPgn(conn, rs.getString("pgn_id"), rs.getString("pgn"),
+                                rs.getString("parent_id"));
+                        consumer.accept(pgn, rs.getLong("id"));
+                    }
+                }, fingerprint[0], fingerprint[1]);
+            }
+        }
+    }
+
+    private interface IndexTask {
+        void run() throws SQLException, IOException;
+    }
+
+    /**
+     * Runs a rebuild or compaction on a background thread, unless one is already running.
+     */
+    private static void runPositionIndexTask(IndexTask task) {
+        if (!positionIndexBusy.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (SQLException | IOException e) {
+                System.err.println("Position index update failed: " + e.getMessage());
+            } finally {
+                positionIndexBusy.set(false);
+            }
+        }, "position-index-maintenance");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void compactPositionIndexIfNeeded() {
+        if (positionIndex().getPendingGameCount() > MAX_PENDING_INDEXED_GAMES) {
+            runPositionIndexTask(() -> {
+                long[] fingerprint = collectionFingerprint();
+                positionIndex().compact(fingerprint[0], fingerprint[1]);
+            });
+        }
+    }
+
+    /**
+     * Full-line PGNs, by row id, of the game and of every variation branched from it directly or
+     * through other variations, since their lines start with its moves.
+     */
+    private static Map<Long, String> linesToIndex(Connection conn, String url) throws SQLException {
+        Map<Long, String> pgnsById = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(url);
+        while (!queue.isEmpty()) {
+            String next = queue.poll();
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT id, pgn, parent_id FROM games WHERE pgn_id = ?")) {
+                pstmt.setString(1, next);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    // Also stops at a corrupt chain of parents that loops back
+                    if (!rs.next() || pgnsById.containsKey(rs.getLong("id"))) {
+                        continue;
+                    }
+                    pgnsById.put(rs.getLong("id"),
+                            Variations.fullPgn(conn, next, rs.getString("pgn"), rs.getString("parent_id")));
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT pgn_id FROM games WHERE parent_id = ?")) {
+                pstmt.setString(1, next);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        queue.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return pgnsById;
+    }
+
+    private static long gameId(Connection conn, String url) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM games WHERE pgn_id = ?")) {
+            pstmt.setString(1, url);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    private static final String UPSERT_GAME_SQL = """
+        INSERT INTO games (pgn_id, username, event, site, date, round, white, black, result, eco, termination, time_control, white_elo, black_elo, pgn, note, opening, moves, parent_id, branch_ply)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
         ON CONFLICT(pgn_id) DO UPDATE SET
             username = excluded.username,
             event = excluded.event,
@@ -83,30 +570,211 @@ public class DatabaseService {
             white_elo = excluded.white_elo,
             black_elo = excluded.black_elo,
             pgn = excluded.pgn,
-            note = excluded.note;
+            note = excluded.note,
+            opening = excluded.opening,
+            moves = excluded.moves,
+            parent_id = excluded.parent_id,
+            branch_ply = excluded.branch_ply
         """;
 
+    /** Games per transaction in {@link #saveGames(Collection, String)}. */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Row counts from a bulk save.
+     */
+    public static class BulkSaveResult {
+        private final int inserted;
+        private final int updated;
+        private final int skipped;
+
+        BulkSaveResult(int inserted, int updated, int skipped) {
+            this.inserted = inserted;
+            this.updated = updated;
+            this.skipped = skipped;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+
+        public int getUpdated() {
+            return updated;
+        }
+
+        /**
+         * Games without an id, repeated within the batch, or identical to the saved copy.
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+    }
+
+    /**
+     * Saves or updates one game. A game with a {@link ChessGame#parentId} that is saved is stored
+     * as a variation of it, keeping only the moves after the point where the two lines part.
+     */
+    public void saveGame(ChessGame game, String username) throws SQLException {
+        try (Connection conn = getConnection()) {
+            // The explorer statistics change in the same transaction as the game
+            conn.setAutoCommit(false);
+            try {
+                MoveTree.Changes changes = new MoveTree.Changes();
+                writeGame(conn, game, username, changes);
+                applyMoveTree(conn, changes);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            savedGameIds().add(game.getUrl());
+            positionIndex().putGames(linesToIndex(conn, game.getUrl()));
+        }
+        compactPositionIndexIfNeeded();
+    }
+
+    /**
+     * Upserts one game inside the caller's transaction, recording its explorer changes. A
+     * variation is stored with only its own moves.
+     */
+    private static void writeGame(Connection conn, ChessGame game, String username,
+                                       MoveTree.Changes changes) throws SQLException {
+        ChessGame stored = Variations.asStored(conn, game);
+        changes.remove(MoveTree.read(conn, stored.getUrl()));
+        try (PreparedStatement pstmt = conn.prepareStatement(UPSERT_GAME_SQL + ";")) {
+            bindGame(pstmt, stored, username);
+            pstmt.executeUpdate();
+        }
+        changes.add(MoveTree.read(conn, stored.getUrl()));
+    }
+
+    /**
+     * Saves many games over one connection, using {@link #DEFAULT_BATCH_SIZE} games per transaction.
+     */
+    public BulkSaveResult saveGames(Collection<ChessGame> games, String username) throws SQLException {
+        return saveGames(games, username, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Saves many games over one connection and one prepared statement, batching the rows and
+     * committing every batchSize games. Rows that are already saved unchanged are left alone.
+     * If a batch fails it is rolled back and the exception rethrown; earlier batches stay committed.
+     */
+    public BulkSaveResult saveGames(Collection<ChessGame> games, String username, int batchSize) throws SQLException {
+        // Only touch rows whose content differs, so unchanged games report 0 changes
+        String sql = UPSERT_GAME_SQL + """
+            WHERE games.username IS NOT excluded.username
+               OR games.pgn IS NOT excluded.pgn
+               OR games.note IS NOT excluded.note
+               OR games.parent_id IS NOT excluded.parent_id;
+            """;
+        int size = Math.max(1, batchSize);
+        // inserted, updated, skipped
+        int[] totals = new int[3];
+
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            Set<String> seen = new HashSet<>();
+            List<ChessGame> batch = new ArrayList<>(size);
+            // What each game contributed to the explorer before this save, null for new games
+            List<MoveTree.Contribution> existed = new ArrayList<>(size);
+            try {
+                for (ChessGame game : games) {
+                    if (game.getUrl() == null || game.getPgn() == null || !seen.add(game.getUrl())) {
+                        totals[2]++;
+                        continue;
+                    }
+                    // Variations are stored as deltas here too; a parent saved in the same
+                    // batch is not visible yet, and the game is then stored in full
+                    ChessGame stored = Variations.asStored(conn, game);
+                    existed.add(MoveTree.read(conn, stored.getUrl()));
+                    batch.add(stored);
+                    bindGame(pstmt, stored, username);
+                    pstmt.addBatch();
 
-            pstmt.setString(1, game.getUrl());
-            pstmt.setString(2, username);
-            pstmt.setString(3, parsePgnTag(game.getPgn(), "Event"));
-            pstmt.setString(4, parsePgnTag(game.getPgn(), "Site"));
-            pstmt.setString(5, parsePgnTag(game.getPgn(), "Date"));
-            pstmt.setString(6, parsePgnTag(game.getPgn(), "Round"));
-            pstmt.setString(7, parsePgnTag(game.getPgn(), "White"));
-            pstmt.setString(8, parsePgnTag(game.getPgn(), "Black"));
-            pstmt.setString(9, parsePgnTag(game.getPgn(), "Result"));
-            pstmt.setString(10, parsePgnTag(game.getPgn(), "ECO"));
-            pstmt.setString(11, parsePgnTag(game.getPgn(), "Termination"));
-            pstmt.setString(12, parsePgnTag(game.getPgn(), "TimeControl"));
-            pstmt.setInt(13, Integer.parseInt(parsePgnTag(game.getPgn(), "WhiteElo", "0")));
-            pstmt.setInt(14, Integer.parseInt(parsePgnTag(game.getPgn(), "BlackElo", "0")));
-            pstmt.setString(15, game.getPgn());
-            pstmt.setString(16, game.note);
+                    if (batch.size() == size) {
+                        commitBatch(conn, pstmt, batch, existed, totals);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    commitBatch(conn, pstmt, batch, existed, totals);
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        compactPositionIndexIfNeeded();
+        return new BulkSaveResult(totals[0], totals[1], totals[2]);
+    }
 
-            pstmt.executeUpdate();
+    private static void commitBatch(Connection conn, PreparedStatement pstmt, List<ChessGame> batch,
+                                    List<MoveTree.Contribution> existed, int[] totals) throws SQLException {
+        int[] counts = pstmt.executeBatch();
+
+        Map<Long, String> changed = new HashMap<>();
+        MoveTree.Changes changes = new MoveTree.Changes();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] <= 0) {
+                totals[2]++;
+                continue;
+            }
+            totals[existed.get(i) != null ? 1 : 0]++;
+            changes.remove(existed.get(i));
+            changes.add(MoveTree.read(conn, batch.get(i).getUrl()));
+            changed.putAll(linesToIndex(conn, batch.get(i).getUrl()));
+        }
+        applyMoveTree(conn, changes);
+        conn.commit();
+
+        Set<String> ids = savedGameIds();
+        for (ChessGame game : batch) {
+            ids.add(game.getUrl());
+        }
+        positionIndex().putGames(changed);
+        batch.clear();
+        existed.clear();
+    }
+
+    private static void bindGame(PreparedStatement pstmt, ChessGame game, String username) throws SQLException {
+        Map<String, String> tags = PgnHeaderScanner.scan(game.getPgn());
+        pstmt.setString(1, game.getUrl());
+        pstmt.setString(2, username);
+        pstmt.setString(3, tags.getOrDefault("Event", ""));
+        pstmt.setString(4, tags.getOrDefault("Site", ""));
+        pstmt.setString(5, tags.getOrDefault("Date", ""));
+        pstmt.setString(6, tags.getOrDefault("Round", ""));
+        pstmt.setString(7, tags.getOrDefault("White", ""));
+        pstmt.setString(8, tags.getOrDefault("Black", ""));
+        pstmt.setString(9, tags.getOrDefault("Result", ""));
+        pstmt.setString(10, tags.getOrDefault("ECO", ""));
+        pstmt.setString(11, tags.getOrDefault("Termination", ""));
+        pstmt.setString(12, tags.getOrDefault("TimeControl", ""));
+        pstmt.setInt(13, parseElo(tags.get("WhiteElo")));
+        pstmt.setInt(14, parseElo(tags.get("BlackElo")));
+        pstmt.setString(15, game.getPgn());
+        pstmt.setString(16, game.note);
+        pstmt.setString(17, openingName(tags));
+        // Always re-encoded: the PGN may have been edited since the game was read
+        pstmt.setBytes(18, MoveCodec.encodePgn(game.getPgn()));
+        pstmt.setString(19, game.parentId);
+        if (game.parentId != null) {
+            pstmt.setInt(20, game.branchPly);
+        } else {
+            pstmt.setNull(20, Types.INTEGER);
+        }
+    }
+
+    private static int parseElo(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            // "?" or "-" for unrated players
+            return 0;
         }
     }
 
@@ -114,61 +782,297 @@ public class DatabaseService {
         List<ChessGame> games = new ArrayList<>();
         String sql = "SELECT * FROM games ORDER BY date DESC;";
 
-        try (Connection conn = getConnection();
+        try (Connection conn = getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
-                ChessGame game = new ChessGame();
-                game.url = rs.getString("pgn_id");
-                game.event = rs.getString("event");
-                game.site = rs.getString("site");
-                game.date = rs.getString("date");
-                game.whitePlayerName = rs.getString("white");
-                game.blackPlayerName = rs.getString("black");
-                game.result = rs.getString("result");
-                game.pgn = rs.getString("pgn");
-                game.note = rs.getString("note");
-                games.add(game);
+                games.add(readGame(rs));
             }
         }
         return games;
     }
 
-    private String parsePgnTag(String pgn, String tagName) {
-        return parsePgnTag(pgn, tagName, "");
+    /**
+     * Full-text search over players, event, ECO code, opening and note, best matches first.
+     * Every word must match, and each word also matches as a prefix ("carl" finds "Carlsen").
+     *
+     * @param query  What the user typed; blank returns no results.
+     * @param limit  Maximum number of games to return.
+     * @param offset Number of matches to skip, for fetching later pages.
+     */
+    public List<ChessGame> searchGames(String query, int limit, int offset) throws SQLException {
+        List<ChessGame> games = new ArrayList<>();
+        String match = toFtsQuery(query);
+        if (match == null) {
+            return games;
+        }
+
+        // Column weights: players count most, then opening and ECO, then event and note
+        String sql = """
+            SELECT g.pgn_id, g.event, g.site, g.date, g.white, g.black, g.result FROM games_fts
+            JOIN games g ON g.id = games_fts.rowid
+            WHERE games_fts MATCH ?
+            ORDER BY bm25(games_fts, 10.0, 10.0, 2.0, 4.0, 4.0, 1.0)
+            LIMIT ? OFFSET ?
+            """;
+        try (Connection conn = getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, match);
+            pstmt.setInt(2, limit);
+            pstmt.setInt(3, offset);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    games.add(readSummary(rs));
+                }
+            }
+        }
+        return games;
     }
 
-    private String parsePgnTag(String pgn, String tagName, String defaultValue) {
-        if (pgn == null || tagName == null) {
-            return defaultValue;
+    /**
+     * Turns free text into an FTS5 query of quoted prefix terms, so user input can never be
+     * read as FTS syntax. Returns null if there is nothing to search for.
+     */
+    static String toFtsQuery(String text) {
+        if (text == null) {
+            return null;
         }
-        // Matches [TagName "Value"]
-        Pattern pattern = Pattern.compile("\\[" + tagName + "\\s+\"(.*?)\"\\]");
-        Matcher matcher = pattern.matcher(pgn);
-        if (matcher.find()) {
-            return matcher.group(1);
+        StringBuilder query = new StringBuilder();
+        for (String term : text.trim().split("[^\\p{L}\\p{N}_]+")) {
+            if (term.isEmpty()) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append('"').append(term).append("\"*");
         }
-        return defaultValue;
+        return query.length() > 0 ? query.toString() : null;
     }
 
-    public void deleteGame(String url) throws SQLException {
-        String sql = "DELETE FROM games WHERE pgn_id = ?";
-        try (Connection conn = getConnection();
+    /**
+     * One page of saved games, newest first, without their PGN or note (see {@link #getGame(String)}).
+     * Pages are keyed on the last row of the previous page rather than an offset, so each page
+     * costs the same however deep the user has scrolled.
+     *
+     * @param afterDate The date of the last game on the previous page, or null for the first page.
+     * @param afterId   The id (pgn_id) of that game.
+     */
+    public List<ChessGame> getGameSummaries(String afterDate, String afterId, int limit) throws SQLException {
+        List<ChessGame> games = new ArrayList<>();
+        String sql = afterDate == null
+                ? "SELECT pgn_id, event, site, date, white, black, result FROM games ORDER BY date DESC, pgn_id DESC LIMIT ?"
+                : """
+                  SELECT pgn_id, event, site, date, white, black, result FROM games
+                  WHERE (date, pgn_id) < (?, ?)
+                  ORDER BY date DESC, pgn_id DESC LIMIT ?
+                  """;
+        try (Connection conn = getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (afterDate != null) {
+                pstmt.setString(index++, afterDate);
+                pstmt.setString(index++, afterId);
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    games.add(readSummary(rs));
+                }
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Loads a saved game in full, including its PGN and note.
+     *
+     * @return The game, or null if it is not saved.
+     */
+    public ChessGame getGame(String url) throws SQLException {
+        try (Connection conn = getReadConnection()) {
+            return readFullGame(conn, url);
+        }
+    }
+
+    /**
+     * Reads a game with its full line, rebuilding variations from their parents.
+     */
+    private static ChessGame readFullGame(Connection conn, String url) throws SQLException {
+        String sql = "SELECT * FROM games WHERE pgn_id = ?";
+        ChessGame game;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, url);
-            pstmt.executeUpdate();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                game = rs.next() ? readGame(rs) : null;
+            }
         }
+        if (game != null && game.parentId != null) {
+            MoveList line = Variations.resolve(conn, url);
+            if (line != null) {
+                String startFen = line.getStartFen();
+                game.encodedMoves = MoveCodec.encode(startFen, line);
+                game.pgn = Variations.toPgn(PgnHeaderScanner.scan(game.getPgn()),
+                        startFen == null || startFen.isEmpty() ? STANDARD_START_FEN : startFen, line, 0);
+            }
+        }
+        return game;
     }
 
-    public boolean isGameSaved(String url) throws SQLException {
-        String sql = "SELECT 1 FROM games WHERE pgn_id = ?";
+    private static ChessGame readSummary(ResultSet rs) throws SQLException {
+        ChessGame game = new ChessGame();
+        game.url = rs.getString("pgn_id");
+        game.event = rs.getString("event");
+        game.site = rs.getString("site");
+        game.date = rs.getString("date");
+        game.whitePlayerName = rs.getString("white");
+        game.blackPlayerName = rs.getString("black");
+        game.result = rs.getString("result");
+        return game;
+    }
+
+    private static ChessGame readGame(ResultSet rs) throws SQLException {
+        ChessGame game = readSummary(rs);
+        game.pgn = rs.getString("pgn");
+        game.note = rs.getString("note");
+        game.encodedMoves = rs.getBytes("moves");
+        game.parentId = rs.getString("parent_id");
+        game.branchPly = rs.getInt("branch_ply");
+        return game;
+    }
+
+    /**
+     * Deletes a game. Variations branched from it are moved onto its own parent, or stored in
+     * full if it had none, so they keep their opening moves.
+     */
+    public void deleteGame(String url) throws SQLException {
+        String sql = "DELETE FROM games WHERE pgn_id = ?";
+        Map<Long, String> rebased = new HashMap<>();
         try (Connection conn = getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            long id = gameId(conn, url);
+            conn.setAutoCommit(false);
+            try {
+                MoveTree.Changes changes = new MoveTree.Changes();
+                rebaseVariations(conn, url, changes, rebased);
+                changes.remove(MoveTree.read(conn, url));
+                pstmt.setString(1, url);
+                pstmt.executeUpdate();
+                applyMoveTree(conn, changes);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            savedGameIds().remove(url);
+            if (id >= 0) {
+                positionIndex().removeGame(id);
+            }
+            positionIndex().putGames(rebased);
+        }
+        compactPositionIndexIfNeeded();
+    }
+
+    private static void rebaseVariations(Connection conn, String url, MoveTree.Changes changes,
+                                         Map<Long, String> rebased) throws SQLException {
+        String parentId;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT parent_id FROM games WHERE pgn_id = ?")) {
+            pstmt.setString(1, url);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                parentId = rs.next() ? rs.getString(1) : null;
+            }
+        }
+
+        Map<String, String> children = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT pgn_id, username FROM games WHERE parent_id = ?")) {
             pstmt.setString(1, url);
             try (ResultSet rs = pstmt.executeQuery()) {
-                return rs.next();
+                while (rs.next()) {
+                    children.put(rs.getString(1), rs.getString(2));
+                }
+            }
+        }
+        for (Map.Entry<String, String> child : children.entrySet()) {
+            ChessGame game = readFullGame(conn, child.getKey());
+            game.parentId = parentId;
+            writeGame(conn, game, child.getValue(), changes);
+            // The full line read above; rebasing leaves it unchanged
+            rebased.put(gameId(conn, child.getKey()), game.getPgn());
+        }
+    }
+
+    /**
+     * Every move played from the position across the saved collection, most played first.
+     */
+    public List<ExplorerMove> getExplorerMoves(String fen) throws SQLException {
+        if (!moveTreeReady) {
+            // Still being built from the saved games
+            return Collections.emptyList();
+        }
+        try (Connection conn = getReadConnection()) {
+            return MoveTree.lookup(conn, ZobristHasher.DEFAULT.hash(fen));
+        }
+    }
+
+    /**
+     * Summaries of every saved game that reached the position, by any move order, newest first.
+     */
+    public List<ChessGame> findGamesByPosition(String fen) throws SQLException {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (PositionIndex.Posting posting : positionIndex().lookup(fen)) {
+            ids.add(posting.getGameId());
+        }
+
+        List<ChessGame> games = new ArrayList<>();
+        List<Long> idList = new ArrayList<>(ids);
+        try (Connection conn = getReadConnection()) {
+            for (int from = 0; from < idList.size(); from += DEFAULT_BATCH_SIZE) {
+                List<Long> chunk = idList.subList(from, Math.min(from + DEFAULT_BATCH_SIZE, idList.size()));
+                String sql = "SELECT pgn_id, event, site, date, white, black, result FROM games WHERE id IN ("
+                        + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setLong(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            games.add(readSummary(rs));
+                        }
+                    }
+                }
+            }
+        }
+        games.sort(Comparator.comparing(ChessGame::getDate, Comparator.nullsLast(Comparator.reverseOrder())));
+        return games;
+    }
+
+    /**
+     * A copy of the ids of every saved game, which the caller may change freely.
+     */
+    public Set<String> getSavedGameIds() throws SQLException {
+        return new HashSet<>(savedGameIds());
+    }
+
+    /**
+     * Answered from memory; only the first call after startup reads the database.
+     */
+    public boolean isGameSaved(String url) throws SQLException {
+        return url != null && savedGameIds().contains(url);
+    }
+
+    private static synchronized Set<String> savedGameIds() throws SQLException {
+        if (savedGameIds == null) {
+            Set<String> ids = ConcurrentHashMap.newKeySet();
+            try (Connection conn = getReadConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT pgn_id FROM games")) {
+                while (rs.next()) {
+                    ids.add(rs.getString(1));
+                }
             }
+            savedGameIds = ids;
         }
+        return savedGameIds;
     }
 }
\ No newline at end of file
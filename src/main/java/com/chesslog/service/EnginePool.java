@@ -0,0 +1,116 @@
+package com.chesslog.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of Stockfish processes. Engines are started lazily up to the pool size
+ * and reused across positions, so the process start-up and network loading cost is only
+ * paid once per engine.
+ */
+public class EnginePool {
+
+    private final Path binary;
+    private final int maxEngines;
+    private final int threadsPerEngine;
+    private final int hashMb;
+
+    private final BlockingQueue<UciEngine> idleEngines = new LinkedBlockingQueue<>();
+    private final List<UciEngine> allEngines = new CopyOnWriteArrayList<>();
+    private int startedEngines = 0;
+    private volatile boolean closed = false;
+
+    public EnginePool(Path binary, int maxEngines, int threadsPerEngine, int hashMb) {
+        this.binary = binary;
+        this.maxEngines = Math.max(1, maxEngines);
+        this.threadsPerEngine = Math.max(1, threadsPerEngine);
+        this.hashMb = Math.max(1, hashMb);
+    }
+
+    public int getMaxEngines() {
+        return maxEngines;
+    }
+
+    /**
+     * Checks an engine out of the pool, starting a new process if the pool is not yet full
+     * and otherwise waiting for one to be released.
+     */
+    public UciEngine acquire() throws IOException, InterruptedException {
+        while (true) {
+            if (closed) {
+                throw new IOException("Engine pool has been shut down");
+            }
+            UciEngine engine = idleEngines.poll();
+            if (engine != null) {
+                return engine;
+            }
+            if (reserveStartSlot()) {
+                try {
+                    engine = UciEngine.start(binary, threadsPerEngine, hashMb);
+                    allEngines.add(engine);
+                    return engine;
+                } catch (IOException e) {
+                    releaseStartSlot();
+                    throw e;
+                }
+            }
+            // Poll rather than block forever so a slot freed by a discarded engine is noticed
+            engine = idleEngines.poll(100, TimeUnit.MILLISECONDS);
+            if (engine != null) {
+                return engine;
+            }
+        }
+    }
+
+    /**
+     * Returns an engine to the pool. Engines whose process has died are discarded so that
+     * a replacement can be started on the next acquire.
+     */
+    public void release(UciEngine engine) {
+        if (engine == null) {
+            return;
+        }
+        if (closed || !engine.isAlive()) {
+            discard(engine);
+            return;
+        }
+        idleEngines.offer(engine);
+    }
+
+    /**
+     * Drops an engine that is in an unknown state, e.g. after an I/O error mid-search.
+     */
+    public void discard(UciEngine engine) {
+        allEngines.remove(engine);
+        engine.close();
+        releaseStartSlot();
+    }
+
+    public void shutdown() {
+        closed = true;
+        for (UciEngine engine : allEngines) {
+            engine.close();
+        }
+        allEngines.clear();
+        idleEngines.clear();
+    }
+
+    private synchronized boolean reserveStartSlot() {
+        if (startedEngines < maxEngines) {
+            startedEngines++;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void releaseStartSlot() {
+        if (startedEngines > 0) {
+            startedEngines--;
+        }
+    }
+}
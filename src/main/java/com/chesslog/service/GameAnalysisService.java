@@ -0,0 +1,142 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.MoveClassification;
+import com.chesslog.model.PlyEvaluation;
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Evaluates every position of a game in parallel and classifies each move by how much
+ * it changed the evaluation for the side that played it.
+ */
+public class GameAnalysisService {
+
+    private static final String STANDARD_START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private final AnalysisBackend backend;
+
+    public GameAnalysisService(AnalysisBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Analyses all positions of a game, fanning them out over as many workers as the backend supports.
+     *
+     * @param moves      The moves of the game, including its start FEN if non-standard.
+     * @param depth      Search depth per position.
+     * @param onProgress Called from worker threads with (analysed positions, total positions).
+     * @return One evaluation per move, in game order.
+     * @throws InterruptedException if the calling thread is interrupted while waiting for workers.
+     */
+    public List<PlyEvaluation> analyzeGame(MoveList moves, int depth, BiConsumer<Integer, Integer> onProgress)
+            throws InterruptedException {
+        String startFen = moves.getStartFen();
+        if (startFen == null || startFen.isEmpty()) {
+            startFen = STANDARD_START_FEN;
+        }
+
+        // Replay the game once to collect every position
+        int moveCount = moves.size();
+        String[] fens = new String[moveCount + 1];
+        Integer[] finalScores = new Integer[moveCount + 1];
+        Board board = new Board();
+        board.loadFromFen(startFen);
+        fens[0] = board.getFen();
+        finalScores[0] = finishedGameScore(board);
+        for (int i = 0; i < moveCount; i++) {
+            board.doMove(moves.get(i));
+            fens[i + 1] = board.getFen();
+            finalScores[i + 1] = finishedGameScore(board);
+        }
+
+        int total = 0;
+        for (Integer score : finalScores) {
+            if (score == null) {
+                total++;
+            }
+        }
+
+        final int positionsToAnalyse = total;
+        AnalysisLine[] lines = new AnalysisLine[moveCount + 1];
+        AtomicInteger completed = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int position = 0; position <= moveCount; position++) {
+            if (finalScores[position] != null) {
+                continue;
+            }
+            final int index = position;
+            tasks.add(() -> {
+                List<AnalysisLine> result = backend.getAnalysisLines(fens[index], depth);
+                if (!result.isEmpty()) {
+                    lines[index] = result.get(0);
+                }
+                if (onProgress != null) {
+                    onProgress.accept(completed.incrementAndGet(), positionsToAnalyse);
+                }
+                return null;
+            });
+        }
+
+        int workers = Math.max(1, Math.min(backend.getMaxParallelism(), tasks.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            executor.invokeAll(tasks);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int[] scores = new int[moveCount + 1];
+        for (int position = 0; position <= moveCount; position++) {
+            if (finalScores[position] != null) {
+                scores[position] = finalScores[position];
+            } else if (lines[position] != null) {
+                scores[position] = lines[position].toCentipawns();
+            } else {
+                // Analysis failed for this position; carry the previous evaluation forward
+                scores[position] = position > 0 ? scores[position - 1] : 0;
+            }
+        }
+
+        String[] sanMoves = moves.toSanArray();
+        List<PlyEvaluation> evaluations = new ArrayList<>(moveCount);
+        for (int i = 0; i < moveCount; i++) {
+            int perspective = UciEngine.isBlackToMove(fens[i]) ? -1 : 1;
+            String bestMove = lines[i] != null ? lines[i].getBestMove() : null;
+            String playedMove = moves.get(i).toString();
+
+            MoveClassification classification;
+            if (bestMove != null && bestMove.equalsIgnoreCase(playedMove)) {
+                classification = MoveClassification.GOOD;
+            } else {
+                classification = MoveClassification.classify(perspective * scores[i], perspective * scores[i + 1]);
+            }
+
+            String san = i < sanMoves.length ? sanMoves[i] : playedMove;
+            evaluations.add(new PlyEvaluation(i, san, scores[i + 1], lines[i + 1], bestMove, classification));
+        }
+        return evaluations;
+    }
+
+    /**
+     * Scores positions where the game is over without asking the engine, which has no move to report there.
+     */
+    private static Integer finishedGameScore(Board board) {
+        if (board.isMated()) {
+            return board.getSideToMove() == Side.WHITE ? -AnalysisLine.MATE_CENTIPAWNS : AnalysisLine.MATE_CENTIPAWNS;
+        }
+        if (board.isStaleMate()) {
+            return 0;
+        }
+        return null;
+    }
+}
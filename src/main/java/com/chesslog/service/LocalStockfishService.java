@@ -0,0 +1,234 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.SearchLimit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Analyses positions with Stockfish processes running on this machine, built from the
+ * bundled stockfish/src tree (see the "stockfish" Maven profile).
+ * <p>
+ * Interactive analysis of a game runs on a dedicated board engine with a larger hash table,
+ * outside the pool. It is only told about a new game when the game changes, so its hash
+ * table stays warm while the user steps through moves, and batch jobs using the pool can
+ * never make it wait.
+ */
+public class LocalStockfishService implements AnalysisBackend {
+
+    private static final String ENGINE_PATH_PROPERTY = "chesslog.stockfish";
+    private static final String ENGINE_PATH_ENV = "STOCKFISH_PATH";
+    private static final int DEFAULT_HASH_MB = 32;
+    private static final int BOARD_ENGINE_HASH_MB = 256;
+
+    private final Path binary;
+    private final EnginePool enginePool;
+    private UciEngine boardEngine;
+    private boolean boardEngineBusy = false;
+    private boolean closed = false;
+
+    public LocalStockfishService(Path binary) {
+        // Engines start lazily, so interactive use only ever starts one; batch jobs can use every core
+        this(binary, Runtime.getRuntime().availableProcessors());
+    }
+
+    public LocalStockfishService(Path binary, int poolSize) {
+        this.binary = binary;
+        this.enginePool = new EnginePool(binary, poolSize, 1, DEFAULT_HASH_MB);
+    }
+
+    /**
+     * Looks for a Stockfish executable, first in the "chesslog.stockfish" system property,
+     * then the STOCKFISH_PATH environment variable and finally the vendored build output.
+     */
+    public static Optional<Path> locateEngine() {
+        List<Path> candidates = new ArrayList<>();
+        String configured = System.getProperty(ENGINE_PATH_PROPERTY);
+        if (configured == null || configured.isBlank()) {
+            configured = System.getenv(ENGINE_PATH_ENV);
+        }
+        if (configured != null && !configured.isBlank()) {
+            candidates.add(Paths.get(configured));
+        }
+        candidates.add(Paths.get("stockfish", "src", "stockfish"));
+        candidates.add(Paths.get("stockfish", "src", "stockfish.exe"));
+
+        for (Path candidate : candidates) {
+            if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+                return Optional.of(candidate);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public EnginePool getEnginePool() {
+        return enginePool;
+    }
+
+    @Override
+    public List<AnalysisLine> getAnalysisLines(String fen, int depth) {
+        UciEngine engine = null;
+        try {
+            engine = enginePool.acquire();
+            List<AnalysisLine> lines = engine.analyze(fen, depth);
+            enginePool.release(engine);
+            return lines;
+        } catch (IOException e) {
+            System.err.println("Local engine error: " + e.getMessage());
+            if (engine != null) {
+                enginePool.discard(engine);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (engine != null) {
+                enginePool.release(engine);
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public AnalysisSession startAnalysis(String fen, SearchLimit limit, Consumer<List<AnalysisLine>> onUpdate) {
+        return startAnalysis(null, fen, limit, onUpdate);
+    }
+
+    @Override
+    public AnalysisSession startAnalysis(String gameId, String fen, SearchLimit limit,
+                                         Consumer<List<AnalysisLine>> onUpdate) {
+        AnalysisSession session = new AnalysisSession();
+        Thread worker = new Thread(() -> runSession(session, gameId, fen, limit, onUpdate), "stockfish-search");
+        worker.setDaemon(true);
+        worker.start();
+        return session;
+    }
+
+    private void runSession(AnalysisSession session, String gameId, String fen, SearchLimit limit,
+                            Consumer<List<AnalysisLine>> onUpdate) {
+        UciEngine engine = null;
+        boolean pinned = false;
+        try {
+            if (gameId != null) {
+                engine = acquireBoardEngine();
+                pinned = engine != null;
+            }
+            if (engine == null) {
+                engine = enginePool.acquire();
+            }
+            if (session.isStopped()) {
+                releaseEngine(engine, pinned);
+                session.complete(new ArrayList<>());
+                return;
+            }
+
+            UciEngine searchEngine = engine;
+            session.setStopAction(searchEngine::stopSearch);
+            // Pool engines are shared by unrelated searches, so only the board engine keeps its game
+            List<AnalysisLine> lines = searchEngine.search(pinned ? gameId : null, fen, limit, onUpdate, () -> {
+                // A stop requested before "go" was sent would otherwise be lost
+                if (session.isStopped()) {
+                    searchEngine.stopSearch();
+                }
+            });
+            session.setStopAction(null);
+            releaseEngine(engine, pinned);
+            session.complete(lines);
+        } catch (IOException e) {
+            System.err.println("Local engine error: " + e.getMessage());
+            session.setStopAction(null);
+            if (engine != null) {
+                discardEngine(engine, pinned);
+            }
+            session.fail(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            session.fail(e);
+        }
+    }
+
+    /**
+     * Checks out the board engine, starting it on first use.
+     *
+     * @return The engine, or null if it is already running a search and the caller should use the pool.
+     */
+    private UciEngine acquireBoardEngine() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Local engine has been shut down");
+            }
+            if (boardEngineBusy) {
+                return null;
+            }
+            boardEngineBusy = true;
+            if (boardEngine != null && boardEngine.isAlive()) {
+                return boardEngine;
+            }
+        }
+
+        try {
+            UciEngine engine = UciEngine.start(binary, 1, BOARD_ENGINE_HASH_MB);
+            synchronized (this) {
+                boardEngine = engine;
+            }
+            return engine;
+        } catch (IOException e) {
+            synchronized (this) {
+                boardEngineBusy = false;
+            }
+            throw e;
+        }
+    }
+
+    private void releaseEngine(UciEngine engine, boolean pinned) {
+        if (!pinned) {
+            enginePool.release(engine);
+            return;
+        }
+        synchronized (this) {
+            boardEngineBusy = false;
+            if (closed) {
+                engine.close();
+            }
+        }
+    }
+
+    private void discardEngine(UciEngine engine, boolean pinned) {
+        if (!pinned) {
+            enginePool.discard(engine);
+            return;
+        }
+        engine.close();
+        synchronized (this) {
+            boardEngine = null;
+            boardEngineBusy = false;
+        }
+    }
+
+    @Override
+    public int getMaxMultiPv() {
+        return SearchLimit.MAX_MULTI_PV;
+    }
+
+    @Override
+    public int getMaxParallelism() {
+        return enginePool.getMaxEngines();
+    }
+
+    @Override
+    public void shutdown() {
+        enginePool.shutdown();
+        synchronized (this) {
+            closed = true;
+            if (boardEngine != null) {
+                boardEngine.close();
+                boardEngine = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.chesslog.service;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.PieceType;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+import com.github.bhlangonijr.chesslib.pgn.PgnHolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Packs a game's moves into a few bytes per move, so a saved game can be opened without
+ * running the PGN parser.
+ * <p>
+ * Layout: version (1 byte), flags (1 byte), then if the game does not start from the standard
+ * position the start FEN as a 2-byte length and UTF-8 text, then one big-endian 16-bit word per
+ * half-move: from square (6 bits), to square (6 bits), promotion piece (3 bits, 0 for none).
+ */
+public final class MoveCodec {
+
+    private static final int VERSION = 1;
+    private static final int FLAG_START_FEN = 1;
+    private static final String STANDARD_START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String PROMOTION_PIECES = " nbrq";
+
+    private MoveCodec() {
+    }
+
+    /**
+     * Encodes the first game in a PGN, or returns null if it cannot be parsed.
+     */
+    public static byte[] encodePgn(String pgn) {
+        if (pgn == null || pgn.isEmpty()) {
+            return null;
+        }
+        try {
+            PgnHolder pgnHolder = new PgnHolder("codec.pgn");
+            pgnHolder.loadPgn(pgn);
+            if (pgnHolder.getGames().isEmpty()) {
+                return null;
+            }
+            MoveList moves = pgnHolder.getGames().get(0).getHalfMoves();
+            return encode(moves.getStartFen(), moves);
+        } catch (Exception e) {
+            System.err.println("Could not encode moves: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param startFen The position before the first move; null or empty for the standard start.
+     */
+    public static byte[] encode(String startFen, List<Move> moves) {
+        boolean customStart = startFen != null && !startFen.isEmpty() && !startFen.equals(STANDARD_START_FEN);
+        byte[] fen = customStart ? startFen.getBytes(StandardCharsets.UTF_8) : new byte[0];
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 + (customStart ? 2 + fen.length : 0) + 2 * moves.size());
+        buffer.put((byte) VERSION);
+        buffer.put((byte) (customStart ? FLAG_START_FEN : 0));
+        if (customStart) {
+            buffer.putShort((short) fen.length);
+            buffer.put(fen);
+        }
+        for (Move move : moves) {
+            int word = move.getFrom().ordinal() << 9 | move.getTo().ordinal() << 3 | promotionCode(move.getPromotion());
+            buffer.putShort((short) word);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Replays encoded moves into a move list whose start FEN is set.
+     *
+     * @return The moves, or null if the data is not something {@link #encode} produced.
+     */
+    public static MoveList decode(byte[] data) {
+        if (data == null || data.length < 2 || data[0] != VERSION) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            buffer.position(1);
+            String startFen = STANDARD_START_FEN;
+            if ((buffer.get() & FLAG_START_FEN) != 0) {
+                byte[] fen = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(fen);
+                startFen = new String(fen, StandardCharsets.UTF_8);
+            }
+            if (buffer.remaining() % 2 != 0) {
+                return null;
+            }
+
+            // The board is only needed to know whose pawn is promoting
+            Board board = new Board();
+            board.loadFromFen(startFen);
+            MoveList moves = new MoveList(startFen);
+            while (buffer.hasRemaining()) {
+                int word = Short.toUnsignedInt(buffer.getShort());
+                Square from = Square.values()[word >>> 9 & 63];
+                Square to = Square.values()[word >>> 3 & 63];
+                Move move = new Move(from, to, promotionPiece(word & 7, board.getSideToMove()));
+                board.doMove(move);
+                moves.add(move);
+            }
+            return moves;
+        } catch (Exception e) {
+            System.err.println("Could not decode moves: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static int promotionCode(Piece promotion) {
+        if (promotion == null || promotion == Piece.NONE) {
+            return 0;
+        }
+        PieceType type = promotion.getPieceType();
+        if (type == PieceType.KNIGHT) {
+            return 1;
+        } else if (type == PieceType.BISHOP) {
+            return 2;
+        } else if (type == PieceType.ROOK) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static Piece promotionPiece(int code, Side side) {
+        if (code == 0 || code >= PROMOTION_PIECES.length()) {
+            return Piece.NONE;
+        }
+        char symbol = PROMOTION_PIECES.charAt(code);
+        return Piece.fromFenSymbol(String.valueOf(side == Side.WHITE ? Character.toUpperCase(symbol) : symbol));
+    }
+}
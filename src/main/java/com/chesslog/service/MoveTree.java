@@ -0,0 +1,280 @@
+package com.chesslog.service;
+
+import com.chesslog.model.ExplorerMove;
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.move.Move;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Win/draw/loss statistics for every move played from every position in the collection, kept in
+ * the move_tree table. Rows are adjusted by each game's contribution as it is saved, changed or
+ * deleted, so the explorer reads a handful of rows by primary key instead of scanning games.
+ * <p>
+ * A game counts once per position and move, however often it repeats them. Ratings are those of
+ * the player who made the move.
+ */
+final class MoveTree {
+
+    static final String CREATE_TABLE_SQL = """
+        CREATE TABLE IF NOT EXISTS move_tree (
+            position_key INTEGER NOT NULL,     -- Zobrist hash of the position before the move
+            move TEXT NOT NULL,                -- UCI
+            games INTEGER NOT NULL,
+            white_wins INTEGER NOT NULL,
+            draws INTEGER NOT NULL,
+            black_wins INTEGER NOT NULL,
+            elo_sum INTEGER NOT NULL,          -- Ratings of the players who made the move
+            elo_count INTEGER NOT NULL,
+            PRIMARY KEY (position_key, move)
+        ) WITHOUT ROWID;
+        """;
+
+    private static final String ADD_SQL = """
+        INSERT INTO move_tree (position_key, move, games, white_wins, draws, black_wins, elo_sum, elo_count)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT(position_key, move) DO UPDATE SET
+            games = games + excluded.games,
+            white_wins = white_wins + excluded.white_wins,
+            draws = draws + excluded.draws,
+            black_wins = black_wins + excluded.black_wins,
+            elo_sum = elo_sum + excluded.elo_sum,
+            elo_count = elo_count + excluded.elo_count;
+        """;
+
+    private static final String PRUNE_SQL = "DELETE FROM move_tree WHERE position_key = ? AND move = ? AND games <= 0";
+
+    private static final String CONTRIBUTION_COLUMNS =
+            "moves, CASE WHEN moves IS NULL THEN pgn END AS pgn, result, white_elo, black_elo";
+
+    private static final String STANDARD_START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Games replayed per flush when rebuilding, which bounds the statistics held in memory
+    private static final int REBUILD_CHUNK = 2000;
+
+    // games, white wins, draws, black wins, elo sum, elo count
+    private static final int FIELDS = 6;
+
+    private MoveTree() {
+    }
+
+    /**
+     * What one saved game adds to the tree: its moves, result and ratings.
+     */
+    static final class Contribution {
+        private final byte[] moves;
+        private final String pgn;
+        private final String result;
+        private final int whiteElo;
+        private final int blackElo;
+
+        private Contribution(byte[] moves, String pgn, String result, int whiteElo, int blackElo) {
+            this.moves = moves;
+            this.pgn = pgn;
+            this.result = result;
+            this.whiteElo = whiteElo;
+            this.blackElo = blackElo;
+        }
+
+        private MoveList moveList() {
+            // Rows saved before moves were encoded only have their PGN
+            return MoveCodec.decode(moves != null ? moves : MoveCodec.encodePgn(pgn));
+        }
+    }
+
+    /**
+     * Summed changes to the tree, written in one pass by {@link #apply(Connection)}. A game saved
+     * unchanged is removed and added again, which cancels out here and writes nothing.
+     */
+    static final class Changes {
+        private final Map<Long, Map<String, long[]>> edges = new HashMap<>();
+
+        void add(Contribution game) {
+            record(game, 1);
+        }
+
+        /**
+         * Takes a game's contribution back out; null is ignored, for games that were not saved.
+         */
+        void remove(Contribution game) {
+            record(game, -1);
+        }
+
+        boolean isEmpty() {
+            return edges.isEmpty();
+        }
+
+        private void record(Contribution game, int sign) {
+            if (game == null) {
+                return;
+            }
+            MoveList moves = game.moveList();
+            if (moves == null) {
+                return;
+            }
+            int outcome = outcomeField(game.result);
+            String startFen = moves.getStartFen();
+            Board board = new Board();
+            board.loadFromFen(startFen == null || startFen.isEmpty() ? STANDARD_START_FEN : startFen);
+
+            Set<String> seen = new HashSet<>();
+            for (Move move : moves) {
+                long key = ZobristHasher.DEFAULT.hash(board.getFen());
+                String uci = toUci(move);
+                if (seen.add(key + " " + uci)) {
+                    long[] stats = edges.computeIfAbsent(key, k -> new HashMap<>()).computeIfAbsent(uci, k -> new long[FIELDS]);
+                    int elo = board.getSideToMove() == Side.WHITE ? game.whiteElo : game.blackElo;
+                    stats[0] += sign;
+                    if (outcome > 0) {
+                        stats[outcome] += sign;
+                    }
+                    if (elo > 0) {
+                        stats[4] += (long) sign * elo;
+                        stats[5] += sign;
+                    }
+                }
+                board.doMove(move);
+            }
+        }
+
+        void apply(Connection conn) throws SQLException {
+            try (PreparedStatement add = conn.prepareStatement(ADD_SQL);
+                 PreparedStatement prune = conn.prepareStatement(PRUNE_SQL)) {
+                boolean pruning = false;
+                for (Map.Entry<Long, Map<String, long[]>> position : edges.entrySet()) {
+                    for (Map.Entry<String, long[]> edge : position.getValue().entrySet()) {
+                        long[] stats = edge.getValue();
+                        if (isZero(stats)) {
+                            continue;
+                        }
+                        add.setLong(1, position.getKey());
+                        add.setString(2, edge.getKey());
+                        for (int i = 0; i < FIELDS; i++) {
+                            add.setLong(3 + i, stats[i]);
+                        }
+                        add.addBatch();
+                        if (stats[0] < 0) {
+                            prune.setLong(1, position.getKey());
+                            prune.setString(2, edge.getKey());
+                            prune.addBatch();
+                            pruning = true;
+                        }
+                    }
+                }
+                add.executeBatch();
+                if (pruning) {
+                    prune.executeBatch();
+                }
+            }
+            edges.clear();
+        }
+    }
+
+    /**
+     * Reads what a saved game contributes, or null if it is not saved.
+     */
+    static Contribution read(Connection conn, String pgnId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT " + CONTRIBUTION_COLUMNS + " FROM games WHERE pgn_id = ?")) {
+            pstmt.setString(1, pgnId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? readContribution(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Moves played from a position, most played first.
+     */
+    static List<ExplorerMove> lookup(Connection conn, long positionKey) throws SQLException {
+        List<ExplorerMove> moves = new ArrayList<>();
+        String sql = """
+            SELECT move, games, white_wins, draws, black_wins, elo_sum, elo_count FROM move_tree
+            WHERE position_key = ?
+            ORDER BY games DESC
+            """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, positionKey);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long eloCount = rs.getLong("elo_count");
+                    int averageElo = eloCount > 0 ? (int) (rs.getLong("elo_sum") / eloCount) : 0;
+                    moves.add(new ExplorerMove(rs.getString("move"), rs.getInt("games"), rs.getInt("white_wins"),
+                            rs.getInt("draws"), rs.getInt("black_wins"), averageElo));
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Refills the tree from every saved game. Runs in the caller's transaction.
+     */
+    static void rebuild(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM move_tree");
+            try (ResultSet rs = stmt.executeQuery("SELECT " + CONTRIBUTION_COLUMNS + " FROM games")) {
+                Changes changes = new Changes();
+                int pending = 0;
+                while (rs.next()) {
+                    changes.add(readContribution(rs));
+                    if (++pending == REBUILD_CHUNK) {
+                        changes.apply(conn);
+                        pending = 0;
+                    }
+                }
+                changes.apply(conn);
+            }
+        }
+    }
+
+    private static Contribution readContribution(ResultSet rs) throws SQLException {
+        return new Contribution(rs.getBytes("moves"), rs.getString("pgn"), rs.getString("result"),
+                rs.getInt("white_elo"), rs.getInt("black_elo"));
+    }
+
+    /**
+     * Index of the stats field a result counts towards, or 0 for unfinished games.
+     */
+    private static int outcomeField(String result) {
+        if ("1-0".equals(result)) {
+            return 1;
+        } else if ("1/2-1/2".equals(result)) {
+            return 2;
+        } else if ("0-1".equals(result)) {
+            return 3;
+        }
+        return 0;
+    }
+
+    private static boolean isZero(long[] stats) {
+        for (long value : stats) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String toUci(Move move) {
+        String uci = move.getFrom().toString().toLowerCase() + move.getTo().toString().toLowerCase();
+        Piece promotion = move.getPromotion();
+        if (promotion != null && promotion != Piece.NONE) {
+            uci += promotion.getFenSymbol().toLowerCase();
+        }
+        return uci;
+    }
+}
@@ -0,0 +1,265 @@
+package com.chesslog.service;
+
+import com.chesslog.model.ChessGame;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs database work off the caller's thread, so the UI never waits on SQLite.
+ * <p>
+ * Writes go through a bounded queue drained by a single writer thread. A write for a game that
+ * is still waiting in the queue replaces it, so rapid changes to one game cost a single write.
+ * A replaced write of the same kind completes with the one that replaced it; a save replaced by
+ * a delete, or the other way round, never ran and fails with {@link SupersededException}.
+ * <p>
+ * Reads run on a small pool, one thread per read-only connection. Every future completes on the
+ * callback executor, normally the JavaFX application thread.
+ */
+public class PersistenceQueue implements AutoCloseable {
+
+    private static final int DEFAULT_CAPACITY = 256;
+    static final int READER_THREADS = 3;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    /**
+     * A read against the database, run on a reader thread.
+     */
+    public interface DatabaseCall<T> {
+        T call() throws SQLException;
+    }
+
+    /**
+     * Completes a queued write that was dropped because a write of the other kind for the same
+     * game replaced it, e.g. a save followed by a delete before the save ran.
+     */
+    public static class SupersededException extends RuntimeException {
+        SupersededException(String key) {
+            super("A later write replaced the queued write for " + key);
+        }
+    }
+
+    private interface Write {
+        void run() throws SQLException;
+    }
+
+    private static class PendingWrite {
+        private final String key;
+        private final boolean save;
+        private final Write write;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        PendingWrite(String key, boolean save, Write write) {
+            this.key = key;
+            this.save = save;
+            this.write = write;
+        }
+    }
+
+    private final DatabaseService databaseService;
+    private final Executor callbackExecutor;
+    private final int capacity;
+    // Keyed by game id; insertion order is the order writes run in
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private PendingWrite running;
+    private final Thread writerThread;
+    private final ExecutorService readers = Executors.newFixedThreadPool(READER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "database-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean closed;
+
+    /**
+     * @param callbackExecutor Where futures complete, e.g. the JavaFX application thread.
+     */
+    public PersistenceQueue(DatabaseService databaseService, Executor callbackExecutor) {
+        this(databaseService, callbackExecutor, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Distinct games that may wait to be written; further writes are rejected.
+     */
+    public PersistenceQueue(DatabaseService databaseService, Executor callbackExecutor, int capacity) {
+        this.databaseService = databaseService;
+        this.callbackExecutor = callbackExecutor;
+        this.capacity = capacity;
+        this.writerThread = new Thread(this::drain, "database-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues a save of the game as it is now; later changes to the object are not written.
+     */
+    public CompletableFuture<Void> saveGame(ChessGame game, String username) {
+        ChessGame snapshot = new ChessGame();
+        snapshot.url = game.getUrl();
+        snapshot.pgn = game.getPgn();
+        snapshot.note = game.note;
+        snapshot.parentId = game.parentId;
+        return enqueue(snapshot.getUrl(), true, () -> databaseService.saveGame(snapshot, username));
+    }
+
+    public CompletableFuture<Void> deleteGame(String url) {
+        return enqueue(url, false, () -> databaseService.deleteGame(url));
+    }
+
+    /**
+     * Whether the game is saved, counting writes that are queued but not yet run. Answered
+     * without a database round trip once the saved ids are loaded at startup.
+     */
+    public CompletableFuture<Boolean> isGameSaved(String url) {
+        synchronized (this) {
+            PendingWrite write = pending.get(url);
+            if (write == null && running != null && running.key.equals(url)) {
+                write = running;
+            }
+            if (write != null) {
+                return complete(write.save);
+            }
+        }
+        try {
+            return complete(databaseService.isGameSaved(url));
+        } catch (SQLException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * Runs a read on a reader thread. Writes still in the queue are not visible to it.
+     */
+    public <T> CompletableFuture<T> read(DatabaseCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            readers.execute(() -> {
+                try {
+                    T value = call.call();
+                    deliver(() -> result.complete(value));
+                } catch (SQLException | RuntimeException e) {
+                    deliver(() -> result.completeExceptionally(e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            deliver(() -> result.completeExceptionally(e));
+        }
+        return result;
+    }
+
+    /**
+     * Number of games waiting to be written.
+     */
+    public synchronized int getPendingWriteCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops taking work, then waits for the queued writes to finish.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        readers.shutdown();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+            if (writerThread.isAlive()) {
+                System.err.println("Database writes still pending at shutdown: " + getPendingWriteCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized CompletableFuture<Void> enqueue(String key, boolean save, Write write) {
+        if (closed) {
+            return failed(new RejectedExecutionException("The persistence queue is closed"));
+        }
+        PendingWrite replaced = pending.get(key);
+        if (replaced == null && pending.size() >= capacity) {
+            return failed(new RejectedExecutionException("Too many database writes are waiting"));
+        }
+
+        PendingWrite next = new PendingWrite(key, save, write);
+        pending.put(key, next);
+        if (replaced != null && replaced.save != save) {
+            deliver(() -> replaced.result.completeExceptionally(new SupersededException(key)));
+        } else if (replaced != null) {
+            next.result.whenComplete((value, error) -> {
+                if (error != null) {
+                    replaced.result.completeExceptionally(error);
+                } else {
+                    replaced.result.complete(value);
+                }
+            });
+        }
+        notifyAll();
+        return next.result;
+    }
+
+    private void drain() {
+        while (true) {
+            PendingWrite write;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                // Leaves the queue before running, so a newer write for the game queues behind it
+                Iterator<PendingWrite> iterator = pending.values().iterator();
+                write = iterator.next();
+                iterator.remove();
+                running = write;
+            }
+
+            try {
+                write.write.run();
+                deliver(() -> write.result.complete(null));
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Database write failed: " + e.getMessage());
+                deliver(() -> write.result.completeExceptionally(e));
+            } finally {
+                synchronized (this) {
+                    running = null;
+                }
+            }
+        }
+    }
+
+    private void deliver(Runnable completion) {
+        try {
+            callbackExecutor.execute(completion);
+        } catch (RuntimeException e) {
+            // The UI toolkit has already exited; nobody is waiting for the result
+            System.err.println("Could not deliver database result: " + e.getMessage());
+        }
+    }
+
+    private <T> CompletableFuture<T> complete(T value) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        deliver(() -> result.complete(value));
+        return result;
+    }
+
+    private <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        deliver(() -> result.completeExceptionally(error));
+        return result;
+    }
+}
@@ -0,0 +1,81 @@
+package com.chesslog.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the tag pairs at the top of a PGN in a single pass, without parsing the moves.
+ * Scanning stops at the first character that does not start a tag, i.e. at the movetext.
+ */
+public final class PgnHeaderScanner {
+
+    private PgnHeaderScanner() {
+    }
+
+    /**
+     * Returns the header tags by name. When a tag appears more than once the first value wins.
+     *
+     * @param pgn The PGN text, may be null.
+     */
+    public static Map<String, String> scan(String pgn) {
+        Map<String, String> tags = new HashMap<>();
+        if (pgn == null) {
+            return tags;
+        }
+
+        int length = pgn.length();
+        int i = skipWhitespace(pgn, 0);
+        while (i < length && pgn.charAt(i) == '[') {
+            i = skipWhitespace(pgn, i + 1);
+            int nameStart = i;
+            while (i < length && isNameChar(pgn.charAt(i))) {
+                i++;
+            }
+            String name = pgn.substring(nameStart, i);
+
+            i = skipWhitespace(pgn, i);
+            if (i < length && pgn.charAt(i) == '"') {
+                i++;
+                int valueStart = i;
+                StringBuilder unescaped = null;
+                while (i < length && pgn.charAt(i) != '"') {
+                    char c = pgn.charAt(i);
+                    if (c == '\\' && i + 1 < length) {
+                        // Only copy when the value actually contains an escape
+                        if (unescaped == null) {
+                            unescaped = new StringBuilder(pgn.substring(valueStart, i));
+                        }
+                        unescaped.append(pgn.charAt(i + 1));
+                        i += 2;
+                        continue;
+                    }
+                    if (unescaped != null) {
+                        unescaped.append(c);
+                    }
+                    i++;
+                }
+                String value = unescaped != null ? unescaped.toString() : pgn.substring(valueStart, i);
+                if (!name.isEmpty()) {
+                    tags.putIfAbsent(name, value);
+                }
+            }
+
+            while (i < length && pgn.charAt(i) != ']' && pgn.charAt(i) != '\n') {
+                i++;
+            }
+            i = skipWhitespace(pgn, i + 1);
+        }
+        return tags;
+    }
+
+    private static int skipWhitespace(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,190 @@
+package com.chesslog.service;
+
+import com.chesslog.model.BookMove;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads a Polyglot opening book (.bin). The file is memory-mapped and its 16-byte entries,
+ * sorted by position key, are binary searched, so lookups cost a few page reads and no parsing.
+ * <p>
+ * Entry layout, big-endian: key (8 bytes), move (2), weight (2), learn (4).
+ */
+public class PolyglotBook implements AutoCloseable {
+
+    private static final String BOOK_PATH_PROPERTY = "chesslog.book";
+    private static final String BOOK_PATH_ENV = "CHESSLOG_BOOK";
+    private static final int ENTRY_SIZE = 16;
+    private static final String PROMOTION_PIECES = " nbrq";
+
+    private final FileChannel channel;
+    private final MappedByteBuffer entries;
+    private final int entryCount;
+    private final ZobristHasher hasher;
+
+    private PolyglotBook(FileChannel channel, MappedByteBuffer entries, ZobristHasher hasher) {
+        this.channel = channel;
+        this.entries = entries;
+        this.entryCount = entries.capacity() / ENTRY_SIZE;
+        this.hasher = hasher;
+    }
+
+    /**
+     * Maps a book file into memory.
+     *
+     * @param file   The .bin book.
+     * @param hasher Must produce the same keys the book was built with, normally {@link ZobristHasher#polyglot()}.
+     */
+    public static PolyglotBook open(Path file, ZobristHasher hasher) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size() - channel.size() % ENTRY_SIZE;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Opening book is too large: " + file);
+            }
+            MappedByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new PolyglotBook(channel, entries, hasher);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the book named by the "chesslog.book" system property, the CHESSLOG_BOOK environment
+     * variable or book.bin in the working directory. Needs the Polyglot key table on the classpath.
+     */
+    public static Optional<PolyglotBook> locate() {
+        String configured = System.getProperty(BOOK_PATH_PROPERTY);
+        if (configured == null || configured.isBlank()) {
+            configured = System.getenv(BOOK_PATH_ENV);
+        }
+        Path file = configured != null && !configured.isBlank() ? Paths.get(configured) : Paths.get("book.bin");
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+
+        Optional<ZobristHasher> hasher = ZobristHasher.polyglot();
+        if (hasher.isEmpty()) {
+            System.err.println("Opening book " + file + " found, but " + ZobristHasher.POLYGLOT_KEYS_RESOURCE
+                    + " is missing; book lookups are disabled.");
+            return Optional.empty();
+        }
+        try {
+            System.out.println("Using opening book at " + file);
+            return Optional.of(open(file, hasher.get()));
+        } catch (IOException e) {
+            System.err.println("Failed to open opening book: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the book moves for a position, highest weight first, or an empty list if it is out of book.
+     */
+    public List<BookMove> lookup(String fen) {
+        long key = hasher.hash(fen);
+        List<BookMove> moves = new ArrayList<>();
+        for (int i = firstEntry(key); i < entryCount && keyAt(i) == key; i++) {
+            int offset = i * ENTRY_SIZE;
+            int move = Short.toUnsignedInt(entries.getShort(offset + 8));
+            int weight = Short.toUnsignedInt(entries.getShort(offset + 10));
+            moves.add(new BookMove(decodeMove(move, fen), weight));
+        }
+        moves.sort(Comparator.comparingInt(BookMove::getWeight).reversed());
+        return moves;
+    }
+
+    public boolean contains(String fen) {
+        long key = hasher.hash(fen);
+        int index = firstEntry(key);
+        return index < entryCount && keyAt(index) == key;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Index of the first entry whose key is not below the given one; keys compare unsigned.
+     */
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(keyAt(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long keyAt(int index) {
+        return entries.getLong(index * ENTRY_SIZE);
+    }
+
+    /**
+     * Polyglot packs to-file, to-rank, from-file, from-rank and promotion piece into 3 bits each,
+     * and encodes castling as the king capturing its own rook.
+     */
+    static String decodeMove(int move, String fen) {
+        int toFile = move & 7;
+        int toRank = (move >> 3) & 7;
+        int fromFile = (move >> 6) & 7;
+        int fromRank = (move >> 9) & 7;
+        int promotion = (move >> 12) & 7;
+
+        if (fromFile == 4 && (toFile == 0 || toFile == 7) && fromRank == toRank
+                && Character.toLowerCase(pieceAt(fen, fromFile, fromRank)) == 'k') {
+            toFile = toFile == 7 ? 6 : 2;
+        }
+
+        String uci = "" + (char) ('a' + fromFile) + (fromRank + 1) + (char) ('a' + toFile) + (toRank + 1);
+        if (promotion > 0 && promotion < PROMOTION_PIECES.length()) {
+            uci += PROMOTION_PIECES.charAt(promotion);
+        }
+        return uci;
+    }
+
+    private static char pieceAt(String fen, int file, int rank) {
+        String[] rows = fen.trim().split("\\s+")[0].split("/");
+        if (rows.length != 8) {
+            return ' ';
+        }
+        String row = rows[7 - rank];
+        int current = 0;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (Character.isDigit(c)) {
+                current += c - '0';
+            } else {
+                if (current == file) {
+                    return c;
+                }
+                current++;
+            }
+            if (current > file) {
+                return ' ';
+            }
+        }
+        return ' ';
+    }
+}
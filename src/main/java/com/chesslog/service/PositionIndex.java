@@ -0,0 +1,497 @@
+package com.chesslog.service;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.game.Game;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+import com.github.bhlangonijr.chesslib.pgn.PgnHolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the saved games that passed through a position, transpositions included.
+ * <p>
+ * Every ply of every game is stored as a posting under the Zobrist key of the position it
+ * reached. Postings live in a sorted file that is memory-mapped and binary searched, so a lookup
+ * touches a few pages off-heap. Games saved or deleted since the file was written are kept in
+ * memory and override the file until {@link #compact} merges them in.
+ * <p>
+ * File layout, big-endian: magic (4), version (4), entry count (8), then the collection
+ * fingerprint it was built from, game count (8) and sum of game ids (8). The header is followed by
+ * 16-byte entries sorted by key, game id and ply: key (8), game id (4), ply (4).
+ */
+public class PositionIndex implements AutoCloseable {
+
+    private static final int MAGIC = 0x434C5049;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 16;
+    private static final int WRITE_BUFFER_ENTRIES = 4096;
+    private static final String STANDARD_START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final long[] REMOVED = new long[0];
+
+    /**
+     * One visit of a game to a position.
+     */
+    public static class Posting {
+        private final long gameId;
+        private final int ply;
+
+        Posting(long gameId, int ply) {
+            this.gameId = gameId;
+            this.ply = ply;
+        }
+
+        /**
+         * The game's row id in the games table.
+         */
+        public long getGameId() {
+            return gameId;
+        }
+
+        /**
+         * Half-moves played before the position was reached; 0 is the starting position.
+         */
+        public int getPly() {
+            return ply;
+        }
+    }
+
+    /**
+     * Supplies every saved game for a rebuild.
+     */
+    @FunctionalInterface
+    public interface GameSource {
+        /**
+         * Passes each game's PGN and row id to the consumer.
+         */
+        void forEachGame(ObjLongConsumer<String> consumer) throws SQLException;
+    }
+
+    private final Path file;
+    private final ZobristHasher hasher;
+    // Held while a rebuild or compaction writes the file, so only one runs at a time
+    private final Object fileLock = new Object();
+
+    private FileChannel channel;
+    private MappedByteBuffer entries;
+    private int entryCount;
+    private long gameCount = -1;
+    private long idSum = -1;
+
+    // Position keys by ply for games changed since the file was written; REMOVED for deleted games
+    private final Map<Long, long[]> pending = new HashMap<>();
+
+    private PositionIndex(Path file, ZobristHasher hasher) {
+        this.file = file;
+        this.hasher = hasher;
+    }
+
+    /**
+     * Maps the index file if there is a valid one; otherwise starts empty until {@link #rebuild}.
+     */
+    public static PositionIndex open(Path file, ZobristHasher hasher) {
+        PositionIndex index = new PositionIndex(file, hasher);
+        if (Files.isRegularFile(file)) {
+            try {
+                index.map(file);
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable position index " + file + ": " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Whether the file was built from a collection with this many games and this sum of ids,
+     * i.e. whether it can be used without a rebuild.
+     */
+    public synchronized boolean matches(long expectedGameCount, long expectedIdSum) {
+        return gameCount == expectedGameCount && idSum == expectedIdSum;
+    }
+
+    /**
+     * Indexes a saved game, replacing whatever was indexed for it before.
+     */
+    public void putGame(long gameId, String pgn) {
+        long[] keys = positionKeys(pgn);
+        synchronized (this) {
+            pending.put(gameId, keys);
+        }
+    }
+
+    /**
+     * Indexes several games, replaying their moves in parallel.
+     */
+    public void putGames(Map<Long, String> pgnsById) {
+        Map<Long, long[]> keysById = pgnsById.entrySet().parallelStream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> positionKeys(entry.getValue())));
+        synchronized (this) {
+            pending.putAll(keysById);
+        }
+    }
+
+    public synchronized void removeGame(long gameId) {
+        pending.put(gameId, REMOVED);
+    }
+
+    /**
+     * Number of games held in memory rather than in the file.
+     */
+    public synchronized int getPendingGameCount() {
+        return pending.size();
+    }
+
+    /**
+     * Every visit of a saved game to the position.
+     */
+    public List<Posting> lookup(String fen) {
+        return lookup(hasher.hash(fen));
+    }
+
+    public synchronized List<Posting> lookup(long key) {
+        List<Posting> postings = new ArrayList<>();
+        if (entries != null) {
+            for (int i = firstEntry(key); i < entryCount && keyAt(i) == key; i++) {
+                int offset = HEADER_SIZE + i * ENTRY_SIZE;
+                long gameId = Integer.toUnsignedLong(entries.getInt(offset + 8));
+                if (!pending.containsKey(gameId)) {
+                    postings.add(new Posting(gameId, entries.getInt(offset + 12)));
+                }
+            }
+        }
+        for (Map.Entry<Long, long[]> game : pending.entrySet()) {
+            long[] keys = game.getValue();
+            for (int ply = 0; ply < keys.length; ply++) {
+                if (keys[ply] == key) {
+                    postings.add(new Posting(game.getKey(), ply));
+                }
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * Rebuilds the file from scratch. Moves are replayed on all but one core while the source
+     * streams games in. Changes made while the rebuild runs are kept and still take effect.
+     *
+     * @param gameCount Number of games the source will supply, stored as part of the fingerprint.
+     * @param idSum     Sum of their ids, stored as part of the fingerprint.
+     */
+    public void rebuild(GameSource source, long gameCount, long idSum) throws IOException, SQLException {
+        synchronized (fileLock) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "position-index");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            // Bounds how many PGNs are held in memory waiting for a thread
+            Semaphore inFlight = new Semaphore(threads * 8);
+            PostingBuffer buffer = new PostingBuffer();
+            try {
+                source.forEachGame((pgn, gameId) -> {
+                    inFlight.acquireUninterruptibly();
+                    pool.execute(() -> {
+                        try {
+                            long[] keys = positionKeys(pgn);
+                            synchronized (buffer) {
+                                buffer.add(gameId, keys);
+                            }
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                });
+                pool.shutdown();
+                if (!pool.awaitTermination(1, TimeUnit.HOURS)) {
+                    throw new IOException("Timed out rebuilding the position index");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while rebuilding the position index", e);
+            } finally {
+                pool.shutdownNow();
+            }
+
+            buffer.sort();
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            write(tmp, buffer, gameCount, idSum);
+            synchronized (this) {
+                install(tmp);
+            }
+        }
+    }
+
+    /**
+     * Merges the in-memory changes into a new file.
+     *
+     * @param gameCount Number of saved games now, stored as part of the fingerprint.
+     * @param idSum     Sum of their ids, stored as part of the fingerprint.
+     */
+    public void compact(long gameCount, long idSum) throws IOException {
+        synchronized (fileLock) {
+            Map<Long, long[]> snapshot;
+            PostingBuffer merged = new PostingBuffer();
+            synchronized (this) {
+                snapshot = new HashMap<>(pending);
+                if (entries != null) {
+                    for (int i = 0; i < entryCount; i++) {
+                        int offset = HEADER_SIZE + i * ENTRY_SIZE;
+                        long gameId = Integer.toUnsignedLong(entries.getInt(offset + 8));
+                        if (!snapshot.containsKey(gameId)) {
+                            merged.add(entries.getLong(offset), gameId, entries.getInt(offset + 12));
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<Long, long[]> game : snapshot.entrySet()) {
+                merged.add(game.getKey(), game.getValue());
+            }
+
+            merged.sort();
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            write(tmp, merged, gameCount, idSum);
+            synchronized (this) {
+                install(tmp);
+                // Drop what is now in the file, unless it changed again while the file was written
+                snapshot.forEach((gameId, keys) -> pending.remove(gameId, keys));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        entries = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Zobrist keys of every position in the game, indexed by ply, or none if the PGN cannot be read.
+     */
+    long[] positionKeys(String pgn) {
+        if (pgn == null || pgn.isEmpty()) {
+            return REMOVED;
+        }
+        try {
+            PgnHolder pgnHolder = new PgnHolder("index.pgn");
+            pgnHolder.loadPgn(pgn);
+            if (pgnHolder.getGames().isEmpty()) {
+                return REMOVED;
+            }
+            Game parsed = pgnHolder.getGames().get(0);
+            MoveList moves = parsed.getHalfMoves();
+            String startFen = moves.getStartFen();
+            if (startFen == null || startFen.isEmpty()) {
+                startFen = STANDARD_START_FEN;
+            }
+
+            Board board = new Board();
+            board.loadFromFen(startFen);
+            long[] keys = new long[moves.size() + 1];
+            keys[0] = hasher.hash(board.getFen());
+            for (int i = 0; i < moves.size(); i++) {
+                board.doMove(moves.get(i));
+                keys[i + 1] = hasher.hash(board.getFen());
+            }
+            return keys;
+        } catch (Exception e) {
+            System.err.println("Not indexing unreadable game: " + e.getMessage());
+            return REMOVED;
+        }
+    }
+
+    private void map(Path source) throws IOException {
+        FileChannel newChannel = FileChannel.open(source, StandardOpenOption.READ);
+        try {
+            long size = newChannel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected position index size " + size);
+            }
+            MappedByteBuffer mapped = newChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long count = mapped.getLong(8);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION
+                    || count < 0 || HEADER_SIZE + count * ENTRY_SIZE != size) {
+                throw new IOException("Not a position index, or from another version");
+            }
+            channel = newChannel;
+            entries = mapped;
+            entryCount = (int) count;
+            gameCount = mapped.getLong(16);
+            idSum = mapped.getLong(24);
+        } catch (IOException e) {
+            newChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the current file with a freshly written one and maps it.
+     */
+    private void install(Path written) throws IOException {
+        close();
+        try {
+            Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Some platforms refuse to replace a file that was mapped. Keep serving the old file
+            // and the in-memory changes, but stop trusting its fingerprint so it is rebuilt later
+            Files.deleteIfExists(written);
+            if (Files.isRegularFile(file)) {
+                map(file);
+            }
+            gameCount = -1;
+            idSum = -1;
+            throw e;
+        }
+        map(file);
+    }
+
+    private static void write(Path target, PostingBuffer buffer, long gameCount, long idSum) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(buffer.size).putLong(gameCount).putLong(idSum).flip();
+            writeFully(out, header);
+
+            ByteBuffer chunk = ByteBuffer.allocate(WRITE_BUFFER_ENTRIES * ENTRY_SIZE);
+            for (int i = 0; i < buffer.size; i++) {
+                chunk.putLong(buffer.keys[i]).putLong(buffer.postings[i]);
+                if (!chunk.hasRemaining()) {
+                    chunk.flip();
+                    writeFully(out, chunk);
+                    chunk.clear();
+                }
+            }
+            chunk.flip();
+            writeFully(out, chunk);
+            out.force(true);
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Index of the first entry whose key is not below the given one.
+     */
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keyAt(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long keyAt(int index) {
+        return entries.getLong(HEADER_SIZE + index * ENTRY_SIZE);
+    }
+
+    /**
+     * Growable parallel arrays of keys and packed postings (game id in the high 32 bits, ply in the low).
+     */
+    static final class PostingBuffer {
+        long[] keys = new long[1024];
+        long[] postings = new long[1024];
+        int size;
+
+        void add(long gameId, long[] positionKeys) {
+            for (int ply = 0; ply < positionKeys.length; ply++) {
+                add(positionKeys[ply], gameId, ply);
+            }
+        }
+
+        void add(long key, long gameId, int ply) {
+            if (size == keys.length) {
+                int capacity = keys.length + (keys.length >> 1);
+                keys = Arrays.copyOf(keys, capacity);
+                postings = Arrays.copyOf(postings, capacity);
+            }
+            keys[size] = key;
+            postings[size] = (gameId << 32) | (ply & 0xFFFFFFFFL);
+            size++;
+        }
+
+        void sort() {
+            sort(0, size - 1);
+        }
+
+        private void sort(int low, int high) {
+            while (high - low > 16) {
+                int mid = (low + high) >>> 1;
+                long pivotKey = keys[mid];
+                long pivotPosting = postings[mid];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (compare(i, pivotKey, pivotPosting) < 0) {
+                        i++;
+                    }
+                    while (compare(j, pivotKey, pivotPosting) > 0) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                // Recurse into the smaller half to bound the stack depth
+                if (j - low < high - i) {
+                    sort(low, j);
+                    low = i;
+                } else {
+                    sort(i, high);
+                    high = j;
+                }
+            }
+            for (int i = low + 1; i <= high; i++) {
+                for (int j = i; j > low && compare(j, keys[j - 1], postings[j - 1]) < 0; j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+
+        private int compare(int index, long key, long posting) {
+            int byKey = Long.compare(keys[index], key);
+            return byKey != 0 ? byKey : Long.compare(postings[index], posting);
+        }
+
+        private void swap(int a, int b) {
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            long posting = postings[a];
+            postings[a] = postings[b];
+            postings[b] = posting;
+        }
+    }
+}
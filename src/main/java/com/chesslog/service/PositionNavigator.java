@@ -0,0 +1,103 @@
+package com.chesslog.service;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves a board through the plies of a game without replaying it from the start on every step.
+ * <p>
+ * Steps to a neighbouring ply use doMove and undoMove. Longer jumps load the nearest keyframe, a
+ * FEN recorded every few plies as the game is walked, and play forward from it, unless stepping
+ * from the current position is shorter. Once the keyframes exist, no jump costs more than one
+ * keyframe interval of moves.
+ */
+public class PositionNavigator {
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 16;
+
+    private final Board board;
+    private final List<Move> moves;
+    private final int interval;
+    // keyframes.get(k) is the position after k * interval plies
+    private final List<String> keyframes = new ArrayList<>();
+    private int currentIndex = -1;
+    // Moves played since the board was last loaded, which undoMove can take back
+    private int undoable;
+
+    public PositionNavigator(Board board, String startFen, List<Move> moves) {
+        this(board, startFen, moves, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Puts the board at the start of the game.
+     *
+     * @param moves The game's moves. The list is read as it changes; call {@link #truncate(int)}
+     *              when moves are removed or replaced.
+     */
+    public PositionNavigator(Board board, String startFen, List<Move> moves, int interval) {
+        this.board = board;
+        this.moves = moves;
+        this.interval = Math.max(1, interval);
+        keyframes.add(startFen);
+        board.loadFromFen(startFen);
+    }
+
+    /**
+     * Index of the last move played on the board, or -1 at the start of the game.
+     */
+    public int getCurrentIndex() {
+        return currentIndex;
+    }
+
+    /**
+     * Shows the position after the move at the given index, or the starting position for -1.
+     */
+    public void goTo(int index) {
+        if (index < -1 || index >= moves.size()) {
+            throw new IllegalArgumentException("No move at index " + index + " in a game of " + moves.size());
+        }
+
+        int keyframe = Math.min((index + 1) / interval, keyframes.size() - 1);
+        int fromKeyframe = index + 1 - keyframe * interval;
+        if (index <= currentIndex && currentIndex - index <= undoable && currentIndex - index <= fromKeyframe) {
+            while (currentIndex > index) {
+                board.undoMove();
+                undoable--;
+                currentIndex--;
+            }
+            return;
+        }
+        if (index < currentIndex || index - currentIndex > fromKeyframe) {
+            board.loadFromFen(keyframes.get(keyframe));
+            undoable = 0;
+            currentIndex = keyframe * interval - 1;
+        }
+        while (currentIndex < index) {
+            step();
+        }
+    }
+
+    /**
+     * Forgets keyframes past the given move, after the moves following it were removed or replaced.
+     * The board must not be past that move.
+     */
+    public void truncate(int lastKeptIndex) {
+        int keep = (lastKeptIndex + 1) / interval + 1;
+        while (keyframes.size() > keep) {
+            keyframes.remove(keyframes.size() - 1);
+        }
+    }
+
+    private void step() {
+        board.doMove(moves.get(currentIndex + 1));
+        currentIndex++;
+        undoable++;
+        int ply = currentIndex + 1;
+        if (ply % interval == 0 && ply / interval == keyframes.size()) {
+            keyframes.add(board.getFen());
+        }
+    }
+}
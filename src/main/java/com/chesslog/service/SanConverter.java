@@ -0,0 +1,80 @@
+package com.chesslog.service;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Side;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+
+/**
+ * Turns engine principal variations from UCI notation into numbered SAN, e.g.
+ * "e7e5 g1f3" from a position with Black to move becomes "12... e5 13. Nf3".
+ */
+public class SanConverter {
+
+    private SanConverter() {
+    }
+
+    /**
+     * @param fen      The position the moves start from.
+     * @param uciMoves Space-separated moves in UCI notation.
+     * @return The moves in SAN with move numbers, or null if any move is illegal or malformed.
+     */
+    public static String toSan(String fen, String uciMoves) {
+        if (fen == null || uciMoves == null || uciMoves.isBlank()) {
+            return null;
+        }
+        try {
+            Board board = new Board();
+            board.loadFromFen(fen);
+            MoveList moves = new MoveList(board.getFen());
+            for (String token : uciMoves.trim().split("\\s+")) {
+                Move move = parseUciMove(token, board.getSideToMove());
+                if (move == null || !board.legalMoves().contains(move)) {
+                    return null;
+                }
+                moves.add(move);
+                board.doMove(move);
+            }
+
+            String[] sanMoves = moves.toSanArray();
+            String[] fields = fen.trim().split("\\s+");
+            int moveNumber = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+            boolean whiteToMove = !UciEngine.isBlackToMove(fen);
+
+            StringBuilder san = new StringBuilder();
+            for (int i = 0; i < sanMoves.length; i++) {
+                if (whiteToMove) {
+                    san.append(moveNumber).append(". ");
+                } else if (i == 0) {
+                    san.append(moveNumber).append("... ");
+                }
+                san.append(sanMoves[i]).append(' ');
+                if (!whiteToMove) {
+                    moveNumber++;
+                }
+                whiteToMove = !whiteToMove;
+            }
+            return san.toString().trim();
+        } catch (Exception e) {
+            System.err.println("Could not convert line to SAN: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Move parseUciMove(String uci, Side side) {
+        if (uci.length() < 4 || uci.length() > 5) {
+            return null;
+        }
+        Square from = Square.valueOf(uci.substring(0, 2).toUpperCase());
+        Square to = Square.valueOf(uci.substring(2, 4).toUpperCase());
+        Piece promotion = Piece.NONE;
+        if (uci.length() == 5) {
+            char symbol = uci.charAt(4);
+            promotion = Piece.fromFenSymbol(String.valueOf(side == Side.WHITE
+                    ? Character.toUpperCase(symbol) : Character.toLowerCase(symbol)));
+        }
+        return new Move(from, to, promotion);
+    }
+}
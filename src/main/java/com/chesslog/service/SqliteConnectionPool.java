@@ -0,0 +1,244 @@
+package com.chesslog.service;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed set of long-lived SQLite connections that are leased out one caller at a time.
+ * <p>
+ * Leased connections are proxies: closing one hands it back to the pool instead of closing it,
+ * rolling back anything left uncommitted. Statements from {@code prepareStatement(String)} are
+ * cached per connection by SQL text and only reset when the caller closes them, so repeated
+ * queries skip the prepare step. A leased connection must not be shared between threads.
+ */
+class SqliteConnectionPool {
+
+    private static final int STATEMENT_CACHE_SIZE = 32;
+    private static final long LEASE_TIMEOUT_SECONDS = 30;
+
+    private final String name;
+    private final BlockingQueue<PooledConnection> idle;
+    private final List<PooledConnection> all = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * @param name     Used in error messages.
+     * @param jdbcUrl  The database to open.
+     * @param size     Number of connections.
+     * @param readOnly Whether the connections refuse writes (PRAGMA query_only).
+     */
+    SqliteConnectionPool(String name, String jdbcUrl, int size, boolean readOnly) throws SQLException {
+        this.name = name;
+        this.idle = new ArrayBlockingQueue<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                PooledConnection connection = new PooledConnection(open(jdbcUrl, readOnly));
+                all.add(connection);
+                idle.add(connection);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a connection configured like the pooled ones but owned by the caller, for work that
+     * would otherwise hold a pooled connection for a long time.
+     */
+    static Connection open(String jdbcUrl, boolean readOnly) throws SQLException {
+        Connection connection = DriverManager.getConnection(jdbcUrl);
+        try (Statement stmt = connection.createStatement()) {
+            // WAL lets readers run while a write is in progress; NORMAL is durable enough under WAL
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.execute("PRAGMA synchronous = NORMAL");
+            stmt.execute("PRAGMA cache_size = -16000");
+            stmt.execute("PRAGMA mmap_size = 268435456");
+            stmt.execute("PRAGMA busy_timeout = 5000");
+            if (readOnly) {
+                stmt.execute("PRAGMA query_only = ON");
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /**
+     * Waits for a free connection. Close the returned connection to give it back.
+     */
+    Connection lease() throws SQLException {
+        if (closed) {
+            throw new SQLException("The " + name + " connection pool is closed");
+        }
+        try {
+            PooledConnection connection = idle.poll(LEASE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (connection == null) {
+                throw new SQLException("Timed out waiting for a " + name + " connection");
+            }
+            return connection.lease();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a " + name + " connection", e);
+        }
+    }
+
+    /**
+     * Closes every connection. Connections still leased are closed underneath their holders.
+     */
+    synchronized void close() {
+        closed = true;
+        for (PooledConnection connection : all) {
+            connection.closeQuietly();
+        }
+        all.clear();
+        idle.clear();
+    }
+
+    private void release(PooledConnection connection) {
+        if (closed) {
+            connection.closeQuietly();
+        } else {
+            idle.add(connection);
+        }
+    }
+
+    private final class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() <= STATEMENT_CACHE_SIZE) {
+                            return false;
+                        }
+                        try {
+                            eldest.getValue().close();
+                        } catch (SQLException e) {
+                            System.err.println("Failed to close cached statement: " + e.getMessage());
+                        }
+                        return true;
+                    }
+                };
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new LeaseHandler(this));
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new StatementHandler(statement));
+        }
+
+        void reset() throws SQLException {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.err.println("Failed to close database connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private final class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+
+        LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        try {
+                            pooled.reset();
+                        } finally {
+                            release(pooled);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.connection.isClosed();
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (method.getName().equals("prepareStatement") && args != null && args.length == 1) {
+                return pooled.prepare((String) args[0]);
+            }
+            return invokeOn(pooled.connection, method, args);
+        }
+    }
+
+    private static final class StatementHandler implements InvocationHandler {
+        private final PreparedStatement statement;
+        private boolean released;
+
+        StatementHandler(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        // Keep the compiled statement; just forget this caller's state
+                        statement.clearBatch();
+                        statement.clearParameters();
+                    }
+                    return null;
+                case "isClosed":
+                    return released || statement.isClosed();
+                default:
+                    return invokeOn(statement, method, args);
+            }
+        }
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -1,120 +1,341 @@
 package com.chesslog.service;
 
 import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.SearchLimit;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Helper class to interact with the stockfish.online API.
+ * <p>
+ * All requests go through one shared OkHttp client with keep-alive connections, timeouts and
+ * a cap on concurrent calls. A token bucket keeps the request rate within the service's limits,
+ * and failed requests (network errors, 429 and 5xx responses) are retried with exponential backoff.
  */
-public class StockfishApiService {
+public class StockfishApiService implements AnalysisBackend {
     private static final String API_URL = "https://stockfish.online/api/s/v2.php";
+    // The API rejects depths above 15
+    private static final int MAX_DEPTH = 15;
+    // Keep concurrent requests low so batch analysis does not trip the service's rate limit
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+    private static final double DEFAULT_REQUESTS_PER_SECOND = 2.0;
+    private static final int DEFAULT_BURST = 4;
+    private static final int MAX_RETRIES = 3;
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = 500;
+    private static final long MAX_RETRY_DELAY_MILLIS = 8000;
+
+    private final HttpUrl baseUrl;
+    private final TokenBucket rateLimiter;
+    private final long retryDelayMillis;
+    private final OkHttpClient client;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stockfish-online");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StockfishApiService() {
+        this(API_URL);
+    }
+
+    /**
+     * @param baseUrl The API endpoint, e.g. a local stub server in tests.
+     */
+    public StockfishApiService(String baseUrl) {
+        this(baseUrl, new TokenBucket(DEFAULT_REQUESTS_PER_SECOND, DEFAULT_BURST));
+    }
+
+    public StockfishApiService(String baseUrl, TokenBucket rateLimiter) {
+        this(baseUrl, rateLimiter, DEFAULT_RETRY_DELAY_MILLIS);
+    }
+
+    StockfishApiService(String baseUrl, TokenBucket rateLimiter, long retryDelayMillis) {
+        this.baseUrl = HttpUrl.get(baseUrl);
+        this.rateLimiter = rateLimiter;
+        this.retryDelayMillis = retryDelayMillis;
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_CONCURRENT_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_REQUESTS);
+        this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_CONCURRENT_REQUESTS, 5, TimeUnit.MINUTES))
+                .connectTimeout(Duration.ofSeconds(5))
+                .readTimeout(Duration.ofSeconds(30))
+                .callTimeout(Duration.ofSeconds(45))
+                .build();
+    }
 
     /**
      * Sends a FEN string to the Stockfish API and returns the analysis results as a list of lines.
      *
-     * @param fen The chess FEN string.
+     * @param fen   The chess FEN string.
+     * @param depth The requested depth, capped at what the API accepts.
      * @return A list of AnalysisLine objects.
      */
-    public List<AnalysisLine> getAnalysisLines(String fen) {
+    @Override
+    public List<AnalysisLine> getAnalysisLines(String fen, int depth) {
+        CompletableFuture<List<AnalysisLine>> request = getAnalysisLinesAsync(fen, depth);
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            request.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Stockfish API request failed: " + e.getCause().getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Asynchronous version of {@link #getAnalysisLines(String, int)}. Cancelling the future aborts the request.
+     */
+    public CompletableFuture<List<AnalysisLine>> getAnalysisLinesAsync(String fen, int depth) {
+        int effectiveDepth = Math.min(depth, MAX_DEPTH);
+        CompletableFuture<JsonObject> request = getAnalysisAsync(fen, effectiveDepth);
+        CompletableFuture<List<AnalysisLine>> lines = request.thenApply(json -> parseAnalysisLines(json, effectiveDepth));
+        lines.whenComplete((result, error) -> {
+            if (lines.isCancelled()) {
+                request.cancel(true);
+            }
+        });
+        return lines;
+    }
+
+    /**
+     * Runs the request asynchronously; stopping the session aborts the HTTP call.
+     */
+    @Override
+    public AnalysisSession startAnalysis(String fen, SearchLimit limit, Consumer<List<AnalysisLine>> onUpdate) {
+        AnalysisSession session = new AnalysisSession();
+        CompletableFuture<List<AnalysisLine>> request = getAnalysisLinesAsync(fen, limit.getDepthOr(DEFAULT_DEPTH));
+        session.setStopAction(() -> request.cancel(true));
+        request.whenComplete((lines, error) -> {
+            session.setStopAction(null);
+            // A cancellation from stop() is expected and not worth reporting
+            if (error != null && !session.isStopped()) {
+                System.err.println("Stockfish API request failed: " + error.getMessage());
+            }
+            List<AnalysisLine> result = lines != null ? lines : new ArrayList<>();
+            if (!session.isStopped() && !result.isEmpty()) {
+                onUpdate.accept(result);
+            }
+            session.complete(result);
+        });
+        return session;
+    }
+
+    private List<AnalysisLine> parseAnalysisLines(JsonObject json, int effectiveDepth) {
         List<AnalysisLine> lines = new ArrayList<>();
-        JsonObject json = getAnalysis(fen);
-        
         if (json != null && json.has("success") && json.get("success").getAsBoolean()) {
             String evaluation = "0.00";
             boolean isMate = false;
-            
+
             if (json.has("mate") && !json.get("mate").isJsonNull()) {
                 evaluation = json.get("mate").getAsString();
                 isMate = true;
             } else if (json.has("evaluation")) {
                 evaluation = json.get("evaluation").getAsString();
             }
-            
+
             String bestMoveRaw = json.has("bestmove") ? json.get("bestmove").getAsString() : "";
             // Extract actual best move (e.g. from "bestmove e2e4 ponder e7e5" get "e2e4")
             String bestMove = bestMoveRaw.replace("bestmove ", "").split(" ")[0];
-            
+
             String continuation = json.has("continuation") ? json.get("continuation").getAsString() : "";
-            
-            // Remove the best move from the continuation string to avoid redundancy if needed, 
+
+            // Remove the best move from the continuation string to avoid redundancy if needed,
             // but the user wants "Best Move" then "Continuation".
             // Actually, continuation usually includes the best move.
-            
-            lines.add(new AnalysisLine(evaluation, bestMove, continuation, isMate));
+
+            lines.add(new AnalysisLine(evaluation, bestMove, continuation, isMate, effectiveDepth));
         }
-        
+
         return lines;
     }
 
+    @Override
+    public int getMaxParallelism() {
+        return MAX_CONCURRENT_REQUESTS;
+    }
+
+    @Override
+    public void shutdown() {
+        scheduler.shutdownNow();
+        client.dispatcher().cancelAll();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
     /**
      * Sends a FEN string to the Stockfish API and returns the best move.
-     * 
+     *
      * @param fen The chess FEN string.
      * @return The best move string (e.g., "e2e4"), or null if the request fails.
      */
     public String getBestMove(String fen) {
         try {
-            String encodedFen = URLEncoder.encode(fen, StandardCharsets.UTF_8);
-            URL url = new URL(API_URL + "?fen=" + encodedFen + "&depth=15");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    
-                    JsonObject jsonObject = JsonParser.parseString(response.toString()).getAsJsonObject();
-                    if (jsonObject.has("success") && jsonObject.get("success").getAsBoolean()) {
-                        // The API v2 returns the best move in the "bestmove" field
-                        if (jsonObject.has("bestmove")) {
-                            return jsonObject.get("bestmove").getAsString();
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
+            return getBestMoveAsync(fen).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * Completes with the best move (e.g., "e2e4"), or null if the API reports no success.
+     */
+    public CompletableFuture<String> getBestMoveAsync(String fen) {
+        return getAnalysisAsync(fen, MAX_DEPTH).thenApply(json -> {
+            // The API v2 returns the best move in the "bestmove" field
+            if (json.has("success") && json.get("success").getAsBoolean() && json.has("bestmove")) {
+                return json.get("bestmove").getAsString();
+            }
+            return null;
+        });
+    }
+
     /**
      * A more comprehensive call that returns the full JSON response if needed.
      */
     public JsonObject getAnalysis(String fen) {
         try {
-            String encodedFen = URLEncoder.encode(fen, StandardCharsets.UTF_8);
-            URL url = new URL(API_URL + "?fen=" + encodedFen + "&depth=15");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-
-            if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-                    StringBuilder response = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        response.append(line);
-                    }
-                    return JsonParser.parseString(response.toString()).getAsJsonObject();
-                }
-            }
-        } catch (Exception e) {
+            return getAnalysisAsync(fen, MAX_DEPTH).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
             e.printStackTrace();
         }
         return null;
     }
+
+    /**
+     * Requests an analysis, waiting for the rate limiter and retrying transient failures.
+     * Cancelling the returned future aborts the request in flight.
+     */
+    public CompletableFuture<JsonObject> getAnalysisAsync(String fen, int depth) {
+        HttpUrl url = baseUrl.newBuilder()
+                .addQueryParameter("fen", fen)
+                .addQueryParameter("depth", String.valueOf(Math.min(depth, MAX_DEPTH)))
+                .build();
+
+        CompletableFuture<JsonObject> result = new CompletableFuture<>();
+        AtomicReference<Call> currentCall = new AtomicReference<>();
+        result.whenComplete((json, error) -> {
+            Call call = currentCall.get();
+            if (result.isCancelled() && call != null) {
+                call.cancel();
+            }
+        });
+        attempt(url, 0, result, currentCall);
+        return result;
+    }
+
+    private void attempt(HttpUrl url, int attempt, CompletableFuture<JsonObject> result, AtomicReference<Call> currentCall) {
+        long waitNanos = rateLimiter.reserve();
+        try {
+            scheduleCall(url, attempt, result, currentCall, waitNanos);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new IOException("Stockfish API client has been shut down"));
+        }
+    }
+
+    private void scheduleCall(HttpUrl url, int attempt, CompletableFuture<JsonObject> result,
+                              AtomicReference<Call> currentCall, long waitNanos) {
+        scheduler.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            Call call = client.newCall(new Request.Builder().url(url).build());
+            currentCall.set(call);
+            // Cancelled between the check above and publishing the call
+            if (result.isDone()) {
+                return;
+            }
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    retryOrFail(url, attempt, result, currentCall, e, -1);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try (response) {
+                        if (response.isSuccessful()) {
+                            result.complete(JsonParser.parseString(response.body().string()).getAsJsonObject());
+                            return;
+                        }
+                        IOException error = new IOException("HTTP " + response.code() + " from " + url.host());
+                        if (response.code() == 429 || response.code() >= 500) {
+                            retryOrFail(url, attempt, result, currentCall, error, retryAfterMillis(response));
+                        } else {
+                            result.completeExceptionally(error);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        }, waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Schedules another attempt after an exponential backoff with jitter, or the server's
+     * Retry-After delay when it sent one.
+     */
+    private void retryOrFail(HttpUrl url, int attempt, CompletableFuture<JsonObject> result,
+                             AtomicReference<Call> currentCall, IOException error, long retryAfterMillis) {
+        if (result.isDone()) {
+            return;
+        }
+        if (attempt >= MAX_RETRIES) {
+            result.completeExceptionally(error);
+            return;
+        }
+        long backoff = Math.min(MAX_RETRY_DELAY_MILLIS, retryDelayMillis << attempt);
+        long delay = retryAfterMillis >= 0 ? retryAfterMillis
+                : backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        try {
+            scheduler.schedule(() -> attempt(url, attempt + 1, result, currentCall), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    private static long retryAfterMillis(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return Math.min(MAX_RETRY_DELAY_MILLIS, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // HTTP-date form; fall back to our own backoff
+            return -1;
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package com.chesslog.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures events per second over a sliding time window, so the rate reflects current
+ * speed rather than the average since a long job started.
+ */
+public class ThroughputMeter {
+
+    private static final long DEFAULT_WINDOW_MILLIS = 30_000;
+
+    private final long windowNanos;
+    private final Deque<Long> events = new ArrayDeque<>();
+
+    public ThroughputMeter() {
+        this(DEFAULT_WINDOW_MILLIS);
+    }
+
+    public ThroughputMeter(long windowMillis) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    public void record() {
+        record(System.nanoTime());
+    }
+
+    synchronized void record(long nowNanos) {
+        events.addLast(nowNanos);
+        evictBefore(nowNanos - windowNanos);
+    }
+
+    public double getRatePerSecond() {
+        return getRatePerSecond(System.nanoTime());
+    }
+
+    /**
+     * Events per second within the window ending at the given time, measured from the
+     * oldest event still in the window.
+     */
+    synchronized double getRatePerSecond(long nowNanos) {
+        evictBefore(nowNanos - windowNanos);
+        if (events.size() < 2) {
+            return 0;
+        }
+        long elapsed = nowNanos - events.peekFirst();
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (events.size() - 1) * 1e9 / elapsed;
+    }
+
+    public synchronized void reset() {
+        events.clear();
+    }
+
+    private void evictBefore(long cutoffNanos) {
+        while (!events.isEmpty() && events.peekFirst() < cutoffNanos) {
+            events.removeFirst();
+        }
+    }
+}
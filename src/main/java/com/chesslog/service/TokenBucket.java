@@ -0,0 +1,52 @@
+package com.chesslog.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token-bucket rate limiter: allows short bursts up to the bucket capacity while holding the
+ * long-run rate to a fixed number of permits per second.
+ * <p>
+ * Callers reserve a permit and are told how long to wait before using it, so they can
+ * schedule the work instead of blocking a thread.
+ */
+public class TokenBucket {
+
+    private final double permitsPerSecond;
+    private final double capacity;
+    private final LongSupplier clock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        this(permitsPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, int capacity, LongSupplier clock) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.clock = clock;
+        this.tokens = this.capacity;
+        this.lastRefillNanos = clock.getAsLong();
+    }
+
+    /**
+     * Reserves one permit. Reservations may overdraw the bucket, which queues later callers
+     * behind earlier ones in order.
+     *
+     * @return How long to wait before using the permit, in nanoseconds; 0 if it is available now.
+     */
+    public synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / permitsPerSecond * 1_000_000_000L);
+    }
+
+    private void refill() {
+        long now = clock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerSecond / 1_000_000_000L);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,274 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.SearchLimit;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * A single Stockfish process driven over the UCI protocol on stdin/stdout.
+ * <p>
+ * Instances are handed out by {@link EnginePool} and run one search at a time; only
+ * {@link #stopSearch()} may be called from another thread.
+ */
+public class UciEngine implements AutoCloseable {
+
+    private final Process process;
+    private final BufferedWriter writer;
+    private final BufferedReader reader;
+    private boolean searching = false;
+    private boolean stopRequested = false;
+    private int multiPv = 1;
+    private String currentGameId;
+
+    private UciEngine(Process process) {
+        this.process = process;
+        this.writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.US_ASCII));
+        this.reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Starts the engine binary and completes the UCI handshake.
+     *
+     * @param binary  Path to the Stockfish executable.
+     * @param threads Value for the "Threads" option.
+     * @param hashMb  Value for the "Hash" option in megabytes.
+     */
+    public static UciEngine start(Path binary, int threads, int hashMb) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(binary.toAbsolutePath().toString());
+        builder.redirectErrorStream(true);
+        UciEngine engine = new UciEngine(builder.start());
+        try {
+            engine.send("uci");
+            engine.waitFor("uciok");
+            engine.setOption("Threads", String.valueOf(threads));
+            engine.setOption("Hash", String.valueOf(hashMb));
+            engine.waitUntilReady();
+        } catch (IOException e) {
+            engine.close();
+            throw e;
+        }
+        return engine;
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    public void setOption(String name, String value) throws IOException {
+        send("setoption name " + name + " value " + value);
+    }
+
+    /**
+     * Runs a fixed-depth search on a fresh position and returns the final principal variation.
+     *
+     * @param fen   The chess FEN string.
+     * @param depth The search depth in plies.
+     * @return The last reported line, or an empty list if the engine reported none.
+     */
+    public List<AnalysisLine> analyze(String fen, int depth) throws IOException {
+        return search(fen, SearchLimit.depth(depth), null, null);
+    }
+
+    /**
+     * Searches a fresh position, reporting every improved line while the engine deepens.
+     * Blocks until the engine sends "bestmove", either because the limit was reached or
+     * because {@link #stopSearch()} was called.
+     *
+     * @param fen       The chess FEN string.
+     * @param limit     When the search should end on its own.
+     * @param onUpdate  Called on this thread with each new line; may be null.
+     * @param onStarted Called once the "go" command has been sent; may be null.
+     * @return The last reported line, or an empty list if the engine reported none.
+     */
+    public List<AnalysisLine> search(String fen, SearchLimit limit, Consumer<List<AnalysisLine>> onUpdate,
+                                     Runnable onStarted) throws IOException {
+        return search(null, fen, limit, onUpdate, onStarted);
+    }
+
+    /**
+     * Like {@link #search(String, SearchLimit, Consumer, Runnable)}, but keeps the hash table from
+     * the previous search when it belonged to the same game, since neighbouring positions share
+     * most of their search tree.
+     *
+     * @param gameId Identifies the game the position belongs to; null always starts a new game.
+     */
+    public List<AnalysisLine> search(String gameId, String fen, SearchLimit limit,
+                                     Consumer<List<AnalysisLine>> onUpdate, Runnable onStarted) throws IOException {
+        boolean blackToMove = isBlackToMove(fen);
+
+        if (limit.getMultiPv() != multiPv) {
+            multiPv = limit.getMultiPv();
+            setOption("MultiPV", String.valueOf(multiPv));
+        }
+        if (gameId == null || !gameId.equals(currentGameId)) {
+            send("ucinewgame");
+        }
+        currentGameId = gameId;
+        send("position fen " + fen);
+        waitUntilReady();
+        beginSearch(limit.toUciCommand());
+        if (onStarted != null) {
+            onStarted.run();
+        }
+
+        // Latest line for each MultiPV slot; the engine refreshes them one at a time
+        AnalysisLine[] linesByRank = new AnalysisLine[multiPv];
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("info ")) {
+                    AnalysisLine parsed = parseInfoLine(line, blackToMove);
+                    if (parsed != null && parsed.getRank() <= linesByRank.length) {
+                        linesByRank[parsed.getRank() - 1] = parsed;
+                        if (onUpdate != null) {
+                            onUpdate.accept(collectLines(linesByRank));
+                        }
+                    }
+                } else if (line.startsWith("bestmove")) {
+                    return collectLines(linesByRank);
+                }
+            }
+        } finally {
+            endSearch();
+        }
+        throw new IOException("Engine closed its output during search");
+    }
+
+    /**
+     * Asks a running search to finish early; ignored when the engine is idle.
+     */
+    public synchronized void stopSearch() {
+        if (searching && !stopRequested) {
+            stopRequested = true;
+            try {
+                send("stop");
+            } catch (IOException e) {
+                System.err.println("Failed to stop engine search: " + e.getMessage());
+            }
+        }
+    }
+
+    private static List<AnalysisLine> collectLines(AnalysisLine[] linesByRank) {
+        List<AnalysisLine> lines = new ArrayList<>(linesByRank.length);
+        for (AnalysisLine line : linesByRank) {
+            if (line != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private synchronized void beginSearch(String goCommand) throws IOException {
+        searching = true;
+        stopRequested = false;
+        send(goCommand);
+    }
+
+    private synchronized void endSearch() {
+        searching = false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            send("quit");
+        } catch (IOException ignored) {
+            // The process is already gone
+        }
+        process.destroy();
+    }
+
+    synchronized void send(String command) throws IOException {
+        writer.write(command);
+        writer.newLine();
+        writer.flush();
+    }
+
+    private void waitUntilReady() throws IOException {
+        send("isready");
+        waitFor("readyok");
+    }
+
+    private void waitFor(String token) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(token)) {
+                return;
+            }
+        }
+        throw new IOException("Engine exited before sending '" + token + "'");
+    }
+
+    static boolean isBlackToMove(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        return fields.length > 1 && fields[1].equals("b");
+    }
+
+    /**
+     * Converts a UCI "info" line into an AnalysisLine with the score from White's point of view,
+     * matching what the stockfish.online API reports.
+     *
+     * @return The parsed line, or null if the info line carries no score or principal variation.
+     */
+    static AnalysisLine parseInfoLine(String line, boolean blackToMove) {
+        String[] tokens = line.split(" ");
+        int depth = 0;
+        int rank = 1;
+        Integer centipawns = null;
+        Integer mate = null;
+        int pvStart = -1;
+
+        for (int i = 1; i < tokens.length; i++) {
+            switch (tokens[i]) {
+                case "depth":
+                    depth = Integer.parseInt(tokens[++i]);
+                    break;
+                case "multipv":
+                    rank = Integer.parseInt(tokens[++i]);
+                    break;
+                case "score":
+                    String kind = tokens[++i];
+                    int value = Integer.parseInt(tokens[++i]);
+                    if (kind.equals("mate")) {
+                        mate = value;
+                    } else {
+                        centipawns = value;
+                    }
+                    break;
+                case "pv":
+                    pvStart = i + 1;
+                    i = tokens.length;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (pvStart < 0 || pvStart >= tokens.length || (centipawns == null && mate == null)) {
+            return null;
+        }
+
+        int sign = blackToMove ? -1 : 1;
+        String evaluation;
+        boolean isMate = mate != null;
+        if (isMate) {
+            evaluation = String.valueOf(sign * mate);
+        } else {
+            evaluation = String.format(Locale.ROOT, "%.2f", sign * centipawns / 100.0);
+        }
+
+        String continuation = String.join(" ", List.of(tokens).subList(pvStart, tokens.length));
+        return new AnalysisLine(evaluation, tokens[pvStart], continuation, isMate, depth, rank, null);
+    }
+}
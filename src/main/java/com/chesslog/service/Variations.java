@@ -0,0 +1,180 @@
+package com.chesslog.service;
+
+import com.chesslog.model.ChessGame;
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.Move;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Stores games branched from a saved game as a delta: the row keeps a reference to the parent
+ * game, the ply at which the line leaves it, and a PGN that starts from that position (FEN and
+ * SetUp tags) holding only the moves after it. The full line is rebuilt on load by replaying the
+ * parent's first moves, following the chain when the parent is itself a variation.
+ * <p>
+ * Because the stored PGN is a valid game from the branch position, the explorer statistics count
+ * a variation only from where it differs from its parent. The position index holds the full line
+ * (see {@link #fullPgn}), so a variation is found from every position it passes through.
+ */
+final class Variations {
+
+    private static final String STANDARD_START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+    // Guards against a corrupt chain of parents
+    private static final int MAX_DEPTH = 64;
+
+    private Variations() {
+    }
+
+    /**
+     * The game as it should be stored: unchanged if it has no saved parent or does not start from
+     * the same position, otherwise a copy holding only the moves after the branch.
+     *
+     * @param game A game whose PGN holds the full line.
+     */
+    static ChessGame asStored(Connection conn, ChessGame game) throws SQLException {
+        if (game.parentId == null || game.parentId.equals(game.getUrl())) {
+            return withParent(game, null, 0, game.getPgn());
+        }
+        MoveList parentLine = resolve(conn, game.parentId);
+        MoveList line = MoveCodec.decode(MoveCodec.encodePgn(game.getPgn()));
+        if (parentLine == null || line == null || !startFen(parentLine).equals(startFen(line))) {
+            return withParent(game, null, 0, game.getPgn());
+        }
+
+        int branchPly = 0;
+        while (branchPly < line.size() && branchPly < parentLine.size()
+                && MoveTree.toUci(line.get(branchPly)).equals(MoveTree.toUci(parentLine.get(branchPly)))) {
+            branchPly++;
+        }
+        String pgn = toPgn(PgnHeaderScanner.scan(game.getPgn()), startFen(line), line, branchPly);
+        return withParent(game, game.parentId, branchPly, pgn);
+    }
+
+    /**
+     * Rebuilds the full line of a saved game, or returns null if it is not saved or unreadable.
+     * A variation whose parent is gone is returned from its branch position.
+     */
+    static MoveList resolve(Connection conn, String pgnId) throws SQLException {
+        return resolve(conn, pgnId, 0);
+    }
+
+    private static MoveList resolve(Connection conn, String pgnId, int depth) throws SQLException {
+        String sql = "SELECT moves, pgn, parent_id, branch_ply FROM games WHERE pgn_id = ?";
+        byte[] moves;
+        String parentId;
+        int branchPly;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, pgnId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                moves = rs.getBytes("moves");
+                if (moves == null) {
+                    moves = MoveCodec.encodePgn(rs.getString("pgn"));
+                }
+                parentId = rs.getString("parent_id");
+                branchPly = rs.getInt("branch_ply");
+            }
+        }
+
+        MoveList own = MoveCodec.decode(moves);
+        if (own == null || parentId == null || depth >= MAX_DEPTH) {
+            return own;
+        }
+        MoveList parentLine = resolve(conn, parentId, depth + 1);
+        if (parentLine == null) {
+            return own;
+        }
+        MoveList line = new MoveList(startFen(parentLine));
+        line.addAll(parentLine.subList(0, Math.min(branchPly, parentLine.size())));
+        line.addAll(own);
+        return line;
+    }
+
+    /**
+     * The PGN of a saved game's full line from its start position, with the tags of the stored
+     * PGN. Games that are not variations, or whose line cannot be rebuilt, keep the stored PGN.
+     */
+    static String fullPgn(Connection conn, String pgnId, String storedPgn, String parentId) throws SQLException {
+        if (parentId == null) {
+            return storedPgn;
+        }
+        MoveList line = resolve(conn, pgnId);
+        if (line == null) {
+            return storedPgn;
+        }
+        return toPgn(PgnHeaderScanner.scan(storedPgn), startFen(line), line, 0);
+    }
+
+    /**
+     * A PGN with the given tags whose movetext holds the line's moves from fromPly on, starting
+     * from the position reached at that ply.
+     */
+    static String toPgn(Map<String, String> tags, String startFen, List<Move> line, int fromPly) {
+        Board board = new Board();
+        board.loadFromFen(startFen);
+        for (int i = 0; i < fromPly; i++) {
+            board.doMove(line.get(i));
+        }
+        String fen = board.getFen();
+
+        Map<String, String> rest = new TreeMap<>(tags);
+        rest.remove("FEN");
+        rest.remove("SetUp");
+        String result = tags.getOrDefault("Result", "*");
+
+        StringBuilder pgn = new StringBuilder();
+        for (String name : SEVEN_TAG_ROSTER) {
+            String value = rest.remove(name);
+            appendTag(pgn, name, value != null ? value : name.equals("Result") ? "*" : "?");
+        }
+        if (!fen.equals(STANDARD_START_FEN)) {
+            appendTag(pgn, "SetUp", "1");
+            appendTag(pgn, "FEN", fen);
+        }
+        for (Map.Entry<String, String> tag : rest.entrySet()) {
+            appendTag(pgn, tag.getKey(), tag.getValue());
+        }
+        pgn.append('\n');
+
+        StringBuilder uci = new StringBuilder();
+        for (int i = fromPly; i < line.size(); i++) {
+            uci.append(MoveTree.toUci(line.get(i))).append(' ');
+        }
+        String san = SanConverter.toSan(fen, uci.toString());
+        if (san != null) {
+            pgn.append(san).append(' ');
+        }
+        return pgn.append(result).toString();
+    }
+
+    private static String startFen(MoveList line) {
+        String fen = line.getStartFen();
+        return fen == null || fen.isEmpty() ? STANDARD_START_FEN : fen;
+    }
+
+    private static void appendTag(StringBuilder pgn, String name, String value) {
+        pgn.append('[').append(name).append(" \"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\""))
+                .append("\"]\n");
+    }
+
+    private static ChessGame withParent(ChessGame game, String parentId, int branchPly, String pgn) {
+        ChessGame stored = new ChessGame();
+        stored.url = game.getUrl();
+        stored.note = game.note;
+        stored.pgn = pgn;
+        stored.parentId = parentId;
+        stored.branchPly = branchPly;
+        return stored;
+    }
+}
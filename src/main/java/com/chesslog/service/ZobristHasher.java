@@ -0,0 +1,177 @@
+package com.chesslog.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Computes 64-bit Zobrist keys for chess positions given as FEN strings.
+ * <p>
+ * Only piece placement, side to move, castling rights and a capturable en passant file
+ * contribute to the key, so the halfmove clock and fullmove number are ignored and
+ * transpositions hash identically. The 781-entry key table uses the Polyglot layout.
+ */
+public class ZobristHasher {
+
+    static final int KEY_COUNT = 781;
+    private static final int CASTLE_OFFSET = 768;
+    private static final int EN_PASSANT_OFFSET = 772;
+    private static final int TURN_OFFSET = 780;
+
+    /**
+     * Hasher with a fixed pseudo-random table; keys are stable across runs and are safe to persist.
+     */
+    public static final ZobristHasher DEFAULT = new ZobristHasher(generateKeys(0x43686573734C6F67L));
+
+    /**
+     * Resource holding the 781 Random64 constants of the Polyglot book format, one hex number per line.
+     */
+    static final String POLYGLOT_KEYS_RESOURCE = "/com/chesslog/polyglot-random64.txt";
+
+    private final long[] keys;
+
+    /**
+     * Loads the standard Polyglot key table, which opening books in .bin format are indexed by.
+     *
+     * @return The hasher, or empty if the key resource is missing or malformed.
+     */
+    public static Optional<ZobristHasher> polyglot() {
+        try (InputStream in = ZobristHasher.class.getResourceAsStream(POLYGLOT_KEYS_RESOURCE)) {
+            if (in == null) {
+                return Optional.empty();
+            }
+            List<Long> parsed = new ArrayList<>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (line.startsWith("0x") || line.startsWith("0X")) {
+                    line = line.substring(2);
+                }
+                parsed.add(Long.parseUnsignedLong(line, 16));
+            }
+            long[] keys = new long[parsed.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = parsed.get(i);
+            }
+            return Optional.of(new ZobristHasher(keys));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Invalid Polyglot key table: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public ZobristHasher(long[] keys) {
+        if (keys.length != KEY_COUNT) {
+            throw new IllegalArgumentException("Expected " + KEY_COUNT + " Zobrist keys but got " + keys.length);
+        }
+        this.keys = keys.clone();
+    }
+
+    /**
+     * Hashes the position described by a FEN string.
+     *
+     * @param fen The chess FEN string; move counters may be omitted.
+     * @return The Zobrist key of the position.
+     */
+    public long hash(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 2) {
+            throw new IllegalArgumentException("Invalid FEN: " + fen);
+        }
+
+        // board[rank][file], rank 0 = first rank
+        char[][] board = new char[8][8];
+        long key = 0L;
+
+        String placement = fields[0];
+        int rank = 7;
+        int file = 0;
+        for (int i = 0; i < placement.length(); i++) {
+            char c = placement.charAt(i);
+            if (c == '/') {
+                rank--;
+                file = 0;
+            } else if (Character.isDigit(c)) {
+                file += c - '0';
+            } else {
+                if (rank < 0 || file > 7) {
+                    throw new IllegalArgumentException("Invalid FEN: " + fen);
+                }
+                board[rank][file] = c;
+                key ^= keys[64 * pieceKind(c) + 8 * rank + file];
+                file++;
+            }
+        }
+
+        boolean whiteToMove = fields[1].equals("w");
+        if (whiteToMove) {
+            key ^= keys[TURN_OFFSET];
+        }
+
+        String castling = fields.length > 2 ? fields[2] : "-";
+        if (castling.indexOf('K') >= 0) key ^= keys[CASTLE_OFFSET];
+        if (castling.indexOf('Q') >= 0) key ^= keys[CASTLE_OFFSET + 1];
+        if (castling.indexOf('k') >= 0) key ^= keys[CASTLE_OFFSET + 2];
+        if (castling.indexOf('q') >= 0) key ^= keys[CASTLE_OFFSET + 3];
+
+        String enPassant = fields.length > 3 ? fields[3] : "-";
+        if (enPassant.length() == 2) {
+            int epFile = enPassant.charAt(0) - 'a';
+            if (epFile >= 0 && epFile < 8 && canCaptureEnPassant(board, epFile, whiteToMove)) {
+                key ^= keys[EN_PASSANT_OFFSET + epFile];
+            }
+        }
+        return key;
+    }
+
+    /**
+     * The en passant file only counts when a pawn of the side to move could actually capture,
+     * otherwise identical positions reached by different move orders would hash differently.
+     */
+    private static boolean canCaptureEnPassant(char[][] board, int epFile, boolean whiteToMove) {
+        int pawnRank = whiteToMove ? 4 : 3;
+        char capturingPawn = whiteToMove ? 'P' : 'p';
+        return (epFile > 0 && board[pawnRank][epFile - 1] == capturingPawn)
+                || (epFile < 7 && board[pawnRank][epFile + 1] == capturingPawn);
+    }
+
+    /**
+     * Polyglot piece order: black pawn, white pawn, black knight, white knight, ... white king.
+     */
+    private static int pieceKind(char piece) {
+        int type;
+        switch (Character.toLowerCase(piece)) {
+            case 'p': type = 0; break;
+            case 'n': type = 1; break;
+            case 'b': type = 2; break;
+            case 'r': type = 3; break;
+            case 'q': type = 4; break;
+            case 'k': type = 5; break;
+            default: throw new IllegalArgumentException("Unknown piece: " + piece);
+        }
+        return 2 * type + (Character.isUpperCase(piece) ? 1 : 0);
+    }
+
+    private static long[] generateKeys(long seed) {
+        long[] generated = new long[KEY_COUNT];
+        long state = seed;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            // SplitMix64
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            generated[i] = z ^ (z >>> 31);
+        }
+        return generated;
+    }
+}
@@ -0,0 +1,41 @@
+package com.chesslog.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MoveClassificationTest {
+
+    @Test
+    public void testThresholdsOnWinningChanceLost() {
+        // From an equal position, 55, 111 and 169 centipawns are the first to lose 0.1, 0.2 and 0.3
+        assertEquals(MoveClassification.GOOD, MoveClassification.classify(0, -54));
+        assertEquals(MoveClassification.INACCURACY, MoveClassification.classify(0, -55));
+        assertEquals(MoveClassification.INACCURACY, MoveClassification.classify(0, -110));
+        assertEquals(MoveClassification.MISTAKE, MoveClassification.classify(0, -111));
+        assertEquals(MoveClassification.MISTAKE, MoveClassification.classify(0, -168));
+        assertEquals(MoveClassification.BLUNDER, MoveClassification.classify(0, -169));
+    }
+
+    @Test
+    public void testSameLossCostsLessWhenAlreadyDecided() {
+        assertEquals(MoveClassification.MISTAKE, MoveClassification.classify(50, -100));
+        assertEquals(MoveClassification.GOOD, MoveClassification.classify(1000, 850));
+        assertEquals(MoveClassification.GOOD, MoveClassification.classify(-850, -1000));
+    }
+
+    @Test
+    public void testMateScores() {
+        int mateInThree = AnalysisLine.MATE_CENTIPAWNS - 3;
+        // Letting a forced mate slip to an ordinary advantage is not punished; throwing it away is
+        assertEquals(MoveClassification.GOOD, MoveClassification.classify(mateInThree, 900));
+        assertEquals(MoveClassification.BLUNDER, MoveClassification.classify(mateInThree, 0));
+        assertEquals(MoveClassification.BLUNDER, MoveClassification.classify(100, -mateInThree));
+        assertEquals(MoveClassification.GOOD, MoveClassification.classify(-mateInThree, -AnalysisLine.MATE_CENTIPAWNS + 1));
+    }
+
+    @Test
+    public void testImprovementIsGood() {
+        assertEquals(MoveClassification.GOOD, MoveClassification.classify(-300, 200));
+    }
+}
@@ -0,0 +1,210 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.SearchLimit;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AnalysisSchedulerTest {
+
+    private static final SearchLimit LIMIT = SearchLimit.infinite();
+
+    /**
+     * A search the test drives by hand.
+     */
+    private static class Search {
+        final String fen;
+        final AnalysisSession session;
+        final Consumer<List<AnalysisLine>> onUpdate;
+        private final AtomicInteger running;
+
+        Search(String fen, AnalysisSession session, Consumer<List<AnalysisLine>> onUpdate, AtomicInteger running) {
+            this.fen = fen;
+            this.session = session;
+            this.onUpdate = onUpdate;
+            this.running = running;
+        }
+
+        synchronized void finish() {
+            if (!session.getResult().isDone()) {
+                // Counted down first, as the engine is idle before anyone hears the search ended
+                running.decrementAndGet();
+                session.complete(lines(fen));
+            }
+        }
+    }
+
+    /**
+     * Hands every search to the test instead of running an engine. Unless told to linger, a
+     * stopped search completes at once, like an engine answering "stop" with its best move.
+     */
+    private static class ManualBackend implements AnalysisBackend {
+        final BlockingQueue<Search> started = new LinkedBlockingQueue<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        private final boolean lingerAfterStop;
+
+        ManualBackend(boolean lingerAfterStop) {
+            this.lingerAfterStop = lingerAfterStop;
+        }
+
+        @Override
+        public List<AnalysisLine> getAnalysisLines(String fen, int depth) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AnalysisSession startAnalysis(String fen, SearchLimit limit, Consumer<List<AnalysisLine>> onUpdate) {
+            AnalysisSession session = new AnalysisSession();
+            Search search = new Search(fen, session, onUpdate, running);
+            if (!lingerAfterStop) {
+                session.setStopAction(search::finish);
+            }
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.add(search);
+            return session;
+        }
+
+        Search nextSearch() throws InterruptedException {
+            return started.poll(5, TimeUnit.SECONDS);
+        }
+
+        Search searchWithin(long millis) throws InterruptedException {
+            return started.poll(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records callbacks as "update id fen" and "finished id fen". A search that ends before the
+     * scheduler has subscribed to it is reported from the scheduler's thread, so wait for events.
+     */
+    private static class RecordingListener implements AnalysisScheduler.Listener {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        String nextEvent() throws InterruptedException {
+            return events.poll(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onUpdate(long positionId, List<AnalysisLine> lines) {
+            events.add("update " + positionId + " " + lines.get(0).getBestMove());
+        }
+
+        @Override
+        public void onFinished(long positionId, List<AnalysisLine> lines) {
+            events.add("finished " + positionId + " " + lines.get(0).getBestMove());
+        }
+    }
+
+    @Test
+    public void testNewerPositionReplacesOlderOne() throws Exception {
+        ManualBackend backend = new ManualBackend(false);
+        AnalysisScheduler scheduler = new AnalysisScheduler(backend, Runnable::run, 50);
+        RecordingListener listener = new RecordingListener();
+        try {
+            scheduler.submit("a", LIMIT, listener);
+            Search first = backend.nextSearch();
+            long second = scheduler.submit("b", LIMIT, listener);
+
+            assertTrue(first.session.isStopped());
+            Search next = backend.nextSearch();
+            assertNotNull(next);
+            assertEquals("b", next.fen);
+            next.finish();
+
+            assertEquals("finished " + second + " b", listener.nextEvent());
+            assertTrue(listener.events.isEmpty());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testRapidSubmissionsStartOnlyTheLast() throws Exception {
+        ManualBackend backend = new ManualBackend(false);
+        AnalysisScheduler scheduler = new AnalysisScheduler(backend, Runnable::run, 200);
+        RecordingListener listener = new RecordingListener();
+        try {
+            // The first position after a quiet spell starts at once
+            scheduler.submit("a", LIMIT, listener);
+            assertEquals("a", backend.nextSearch().fen);
+
+            scheduler.submit("b", LIMIT, listener);
+            scheduler.submit("c", LIMIT, listener);
+            scheduler.submit("d", LIMIT, listener);
+
+            assertEquals("d", backend.nextSearch().fen);
+            assertNull(backend.searchWithin(400));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testWaitsForStoppedSearchBeforeStartingNext() throws Exception {
+        ManualBackend backend = new ManualBackend(true);
+        AnalysisScheduler scheduler = new AnalysisScheduler(backend, Runnable::run, 0);
+        RecordingListener listener = new RecordingListener();
+        try {
+            scheduler.submit("a", LIMIT, listener);
+            Search first = backend.nextSearch();
+            scheduler.submit("b", LIMIT, listener);
+
+            // Stopped but still winding down, so the next search must not start yet
+            assertTrue(first.session.isStopped());
+            assertNull(backend.searchWithin(200));
+
+            first.finish();
+            assertEquals("b", backend.nextSearch().fen);
+            assertEquals(1, backend.maxRunning.get());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testResultsForOldPositionAreDropped() throws Exception {
+        ManualBackend backend = new ManualBackend(true);
+        AnalysisScheduler scheduler = new AnalysisScheduler(backend, Runnable::run, 0);
+        RecordingListener listener = new RecordingListener();
+        try {
+            long firstId = scheduler.submit("a", LIMIT, listener);
+            Search first = backend.nextSearch();
+            first.onUpdate.accept(lines("a"));
+            long secondId = scheduler.submit("b", LIMIT, listener);
+
+            // The superseded search reports once more and then finishes
+            first.onUpdate.accept(lines("a"));
+            first.finish();
+            Search second = backend.nextSearch();
+            second.onUpdate.accept(lines("b"));
+            second.finish();
+
+            assertEquals("update " + firstId + " a", listener.nextEvent());
+            assertEquals("update " + secondId + " b", listener.nextEvent());
+            assertEquals("finished " + secondId + " b", listener.nextEvent());
+            assertTrue(listener.events.isEmpty());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * One line whose best move names the position it was found for; the SAN is filled in so the
+     * scheduler does not need a real position to convert it.
+     */
+    private static List<AnalysisLine> lines(String fen) {
+        return List.of(new AnalysisLine("0.10", fen, fen, false, 20, 1, fen));
+    }
+}
@@ -0,0 +1,148 @@
+package com.chesslog.service;
+
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import mockwebserver3.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArchiveSyncServiceTest {
+
+    private static final String ARCHIVE = "https://api.chess.com/pub/player/hikaru/games/";
+
+    private static final String ARCHIVE_BODY = """
+            {"games": [{"url": "https://www.chess.com/game/live/1", "pgn": "1. e4 e5 *"}]}
+            """;
+
+    @TempDir
+    Path dir;
+
+    private MockWebServer server;
+    private ChessComApiService chessComApiService;
+    private List<String> archiveUrls;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path indexFile = dir.resolve("positions.idx");
+        // An index that already matches the empty collection, so no rebuild starts in the background
+        try (PositionIndex index = PositionIndex.open(indexFile, ZobristHasher.DEFAULT)) {
+            index.compact(0, 0);
+        }
+        DatabaseService.useDatabase("jdbc:sqlite:" + dir.resolve("chesslog.db"), indexFile);
+        DatabaseService.initializeDatabase();
+
+        server = new MockWebServer();
+        server.start();
+        // The archive list comes from the real API host, so hand out archives on the mock server instead
+        chessComApiService = new ChessComApiService() {
+            @Override
+            public List<String> fetchArchiveUrls(String username) {
+                return archiveUrls;
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        chessComApiService.shutdown();
+        server.close();
+        DatabaseService.shutdown();
+    }
+
+    @Test
+    public void testOnlyEndedMonthsAreComplete() {
+        YearMonth now = YearMonth.of(2024, 3);
+        assertTrue(ArchiveSyncService.isPastMonth(ARCHIVE + "2024/02", now));
+        assertTrue(ArchiveSyncService.isPastMonth(ARCHIVE + "2023/12", now));
+        assertFalse(ArchiveSyncService.isPastMonth(ARCHIVE + "2024/03", now));
+    }
+
+    @Test
+    public void testUnrecognisedUrlStaysOpen() {
+        assertFalse(ArchiveSyncService.isPastMonth("https://example.com/archive", YearMonth.of(2024, 3)));
+    }
+
+    @Test
+    public void testEndedMonthIsNotFetchedAgain() throws Exception {
+        archiveUrls = List.of(archiveUrl(YearMonth.of(2020, 1)));
+        server.enqueue(new MockResponse.Builder().code(200).body(ARCHIVE_BODY).addHeader("ETag", "\"v1\"").build());
+        ArchiveSyncService sync = new ArchiveSyncService(chessComApiService, new DatabaseService());
+
+        ArchiveSyncService.SyncResult first = sync.syncUser("hikaru");
+        ArchiveSyncService.SyncResult second = sync.syncUser("hikaru");
+
+        assertEquals(1, first.getArchivesFetched());
+        assertEquals(1, first.getGamesInserted());
+        assertEquals(0, second.getArchivesChecked());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testCurrentMonthIsFetchedWithValidators() throws Exception {
+        archiveUrls = List.of(archiveUrl(YearMonth.now(ZoneOffset.UTC)));
+        server.enqueue(new MockResponse.Builder().code(200).body(ARCHIVE_BODY)
+                .addHeader("ETag", "\"v1\"")
+                .addHeader("Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT")
+                .build());
+        server.enqueue(new MockResponse.Builder().code(304).build());
+        ArchiveSyncService sync = new ArchiveSyncService(chessComApiService, new DatabaseService());
+
+        sync.syncUser("hikaru");
+        ArchiveSyncService.SyncResult second = sync.syncUser("hikaru");
+
+        assertNull(server.takeRequest().getHeaders().get("If-None-Match"));
+        RecordedRequest conditional = server.takeRequest();
+        assertEquals("\"v1\"", conditional.getHeaders().get("If-None-Match"));
+        assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", conditional.getHeaders().get("If-Modified-Since"));
+        // A 304 is checked but neither downloaded nor inserted
+        assertEquals(1, second.getArchivesChecked());
+        assertEquals(0, second.getArchivesFetched());
+        assertEquals(0, second.getGamesInserted());
+    }
+
+    @Test
+    public void testFailedSaveLeavesLedgerUnchanged() throws Exception {
+        archiveUrls = List.of(archiveUrl(YearMonth.of(2020, 1)));
+        server.enqueue(new MockResponse.Builder().code(200).body(ARCHIVE_BODY).addHeader("ETag", "\"v1\"").build());
+        server.enqueue(new MockResponse.Builder().code(200).body(ARCHIVE_BODY).addHeader("ETag", "\"v1\"").build());
+        ArchiveSyncService sync = new ArchiveSyncService(chessComApiService, new DatabaseService());
+
+        executeUpdate("CREATE TRIGGER reject_games BEFORE INSERT ON games BEGIN SELECT RAISE(ABORT, 'rejected'); END");
+        ArchiveSyncService.SyncResult failed = sync.syncUser("hikaru");
+        executeUpdate("DROP TRIGGER reject_games");
+        ArchiveSyncService.SyncResult retried = sync.syncUser("hikaru");
+
+        assertEquals(0, failed.getGamesInserted());
+        // Neither marked complete nor given validators, so the month is fetched in full again
+        assertEquals(1, retried.getArchivesFetched());
+        assertEquals(1, retried.getGamesInserted());
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeaders().get("If-None-Match"));
+    }
+
+    private String archiveUrl(YearMonth month) {
+        return server.url(String.format("/pub/player/hikaru/games/%04d/%02d", month.getYear(), month.getMonthValue()))
+                .toString();
+    }
+
+    private static void executeUpdate(String sql) throws Exception {
+        try (Connection conn = DatabaseService.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
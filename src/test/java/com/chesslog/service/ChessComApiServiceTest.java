@@ -0,0 +1,72 @@
+package com.chesslog.service;
+
+import com.chesslog.model.ChessGame;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChessComApiServiceTest {
+
+    private static final String ARCHIVE_BODY = """
+            {"games": [
+              {"url": "https://www.chess.com/game/live/1", "pgn": "1. e4 e5", "white": {"username": "a", "rating": 1500}},
+              {"url": "https://www.chess.com/game/live/2", "pgn": "1. d4 d5", "accuracies": {"white": 90.1}}
+            ], "extra": [1, 2, 3]}
+            """;
+
+    private MockWebServer server;
+    private ChessComApiService service;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        service = new ChessComApiService();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        service.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testStreamsGamesInOrder() throws Exception {
+        server.enqueue(new MockResponse.Builder().code(200).body(ARCHIVE_BODY).build());
+
+        List<String> urls = new ArrayList<>();
+        int count = service.streamGamesFromArchive(server.url("/games/2024/01").toString(), game -> urls.add(game.getUrl()));
+
+        assertEquals(2, count);
+        assertEquals(List.of("https://www.chess.com/game/live/1", "https://www.chess.com/game/live/2"), urls);
+    }
+
+    @Test
+    public void testConditionalFetchReportsNotModified() {
+        server.enqueue(new MockResponse.Builder().code(304).build());
+
+        List<ChessGame> games = new ArrayList<>();
+        ChessComApiService.ArchiveFetch fetch = service.fetchArchiveIfModified(
+                server.url("/games/2024/01").toString(), "\"abc\"", null, games::add);
+
+        assertNotNull(fetch);
+        assertTrue(fetch.isNotModified());
+        assertTrue(games.isEmpty());
+    }
+
+    @Test
+    public void testMalformedArchiveReturnsEmptyList() {
+        server.enqueue(new MockResponse.Builder().code(200).body("{\"games\": [{\"url\": ").build());
+
+        assertTrue(service.fetchGamesFromArchive(server.url("/games/2024/01").toString()).isEmpty());
+    }
+}
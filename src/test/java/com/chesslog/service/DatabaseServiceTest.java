@@ -0,0 +1,160 @@
+package com.chesslog.service;
+
+import com.chesslog.model.ChessGame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DatabaseServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final DatabaseService databaseService = new DatabaseService();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path indexFile = dir.resolve("positions.idx");
+        // An index that already matches the empty collection, so no rebuild starts in the background
+        try (PositionIndex index = PositionIndex.open(indexFile, ZobristHasher.DEFAULT)) {
+            index.compact(0, 0);
+        }
+        DatabaseService.useDatabase("jdbc:sqlite:" + dir.resolve("chesslog.db"), indexFile);
+        DatabaseService.initializeDatabase();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        DatabaseService.shutdown();
+    }
+
+    @Test
+    public void testSearchTextBecomesQuotedPrefixTerms() {
+        assertEquals("\"magnus\"* \"sicil\"*", DatabaseService.toFtsQuery("  magnus, sicil "));
+        assertEquals("\"NEAR\"* \"a\"* \"b\"*", DatabaseService.toFtsQuery("NEAR(a \"b\")"));
+        assertNull(DatabaseService.toFtsQuery(" -*\" "));
+        assertNull(DatabaseService.toFtsQuery(null));
+    }
+
+    @Test
+    public void testOpeningNameFromTags() {
+        assertEquals("Ruy Lopez", DatabaseService.openingName(Map.of("Opening", "Ruy Lopez", "ECOUrl", "x/Other")));
+        assertEquals("Sicilian Defense Najdorf Variation", DatabaseService.openingName(
+                Map.of("ECOUrl", "https://www.chess.com/openings/Sicilian-Defense-Najdorf-Variation")));
+        assertEquals("", DatabaseService.openingName(Map.of()));
+    }
+
+    @Test
+    public void testBulkSaveCountsInsertsUpdatesAndSkips() throws Exception {
+        List<ChessGame> games = List.of(game("g1", "1. e4 e5"), game("g2", "1. d4 d5"), game("g3", "1. c4 c5"));
+        assertCounts(3, 0, 0, databaseService.saveGames(games, "user", 2));
+
+        // Saved again unchanged, nothing is written
+        assertCounts(0, 0, 3, databaseService.saveGames(games, "user", 2));
+
+        List<ChessGame> edited = List.of(game("g1", "1. e4 e5"), game("g2", "1. d4 Nf6"), game("g4", "1. Nf3 d5"));
+        assertCounts(1, 1, 1, databaseService.saveGames(edited, "user", 2));
+        assertEquals(List.of("g1", "g2", "g3", "g4"), savedIds());
+    }
+
+    @Test
+    public void testBulkSaveSkipsDuplicatesAndGamesWithoutId() throws Exception {
+        List<ChessGame> games = new ArrayList<>();
+        games.add(game("g1", "1. e4 e5"));
+        games.add(game("g1", "1. d4 d5"));
+        games.add(game(null, "1. c4 c5"));
+
+        assertCounts(1, 0, 2, databaseService.saveGames(games, "user", 10));
+        assertEquals(List.of("g1"), savedIds());
+    }
+
+    @Test
+    public void testFailedBatchRollsBackOnlyThatBatch() throws Exception {
+        try (Connection conn = DatabaseService.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TRIGGER reject_bad BEFORE INSERT ON games WHEN new.pgn_id = 'bad' BEGIN
+                    SELECT RAISE(ABORT, 'rejected');
+                END;
+                """);
+        }
+        List<ChessGame> games = List.of(game("g1", "1. e4 e5"), game("g2", "1. d4 d5"),
+                game("g3", "1. c4 c5"), game("bad", "1. Nf3 d5"), game("g5", "1. b3 e5"));
+
+        assertThrows(SQLException.class, () -> databaseService.saveGames(games, "user", 2));
+
+        // The first batch was committed before the second one failed; nothing after it was saved
+        assertEquals(List.of("g1", "g2"), savedIds());
+    }
+
+    @Test
+    public void testKeysetPagingVisitsGamesWithEqualDatesOnce() throws Exception {
+        List<ChessGame> games = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            games.add(game("g" + i, "2024.01.05", "1. e4 e5"));
+        }
+        games.add(game("g6", "2024.01.06", "1. d4 d5"));
+        games.add(game("g0", "2024.01.04", "1. c4 c5"));
+        databaseService.saveGames(games, "user");
+
+        List<String> visited = new ArrayList<>();
+        ChessGame last = null;
+        List<ChessGame> page;
+        do {
+            page = databaseService.getGameSummaries(last != null ? last.getDate() : null,
+                    last != null ? last.getUrl() : null, 2);
+            for (ChessGame summary : page) {
+                visited.add(summary.getUrl());
+            }
+            if (!page.isEmpty()) {
+                last = page.get(page.size() - 1);
+            }
+        } while (page.size() == 2);
+
+        assertEquals(List.of("g6", "g5", "g4", "g3", "g2", "g1", "g0"), visited);
+    }
+
+    private static void assertCounts(int inserted, int updated, int skipped, DatabaseService.BulkSaveResult result) {
+        assertEquals(inserted, result.getInserted());
+        assertEquals(updated, result.getUpdated());
+        assertEquals(skipped, result.getSkipped());
+    }
+
+    private static List<String> savedIds() throws SQLException {
+        List<String> ids = new ArrayList<>();
+        try (Connection conn = DatabaseService.getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT pgn_id FROM games ORDER BY pgn_id")) {
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+        }
+        return ids;
+    }
+
+    private static ChessGame game(String url, String moves) {
+        return game(url, "2024.01.05", moves);
+    }
+
+    private static ChessGame game(String url, String date, String moves) {
+        ChessGame game = new ChessGame();
+        game.url = url;
+        game.pgn = "[Event \"Test\"]\n[Date \"" + date + "\"]\n[White \"a\"]\n[Black \"b\"]\n[Result \"*\"]\n\n"
+                + moves + " *";
+        return game;
+    }
+}
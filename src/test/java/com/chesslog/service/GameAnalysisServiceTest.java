@@ -0,0 +1,81 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import com.chesslog.model.MoveClassification;
+import com.chesslog.model.PlyEvaluation;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class GameAnalysisServiceTest {
+
+    private static final String PGN = "[Event \"Test\"]\n\n1. e4 e5 2. Nf3 Nc6 *";
+
+    // Evaluation from White's point of view of each position from the start on; the last is mate in 3
+    private static final String[] EVALUATIONS = {"0.20", "0.30", "3.00", "1.20", "3"};
+
+    /**
+     * Answers from a fixed table, later positions first so results arrive out of order.
+     */
+    private static class ScriptedBackend implements AnalysisBackend {
+        @Override
+        public List<AnalysisLine> getAnalysisLines(String fen, int depth) {
+            int ply = plyOf(fen);
+            try {
+                Thread.sleep(20L * (EVALUATIONS.length - ply));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            boolean mate = ply == EVALUATIONS.length - 1;
+            // A move never played in the game, so every move is judged by its evaluation
+            return List.of(new AnalysisLine(EVALUATIONS[ply], "a2a3", "a2a3", mate, depth));
+        }
+
+        @Override
+        public int getMaxParallelism() {
+            return EVALUATIONS.length;
+        }
+    }
+
+    @Test
+    public void testResultsKeepGameOrder() throws Exception {
+        List<PlyEvaluation> evaluations = analyze();
+
+        assertEquals(4, evaluations.size());
+        List<String> moves = List.of("e4", "e5", "Nf3", "Nc6");
+        int[] centipawns = {30, 300, 120, AnalysisLine.MATE_CENTIPAWNS - 3};
+        for (int i = 0; i < evaluations.size(); i++) {
+            assertEquals(i, evaluations.get(i).getPly());
+            assertEquals(moves.get(i), evaluations.get(i).getMove());
+            assertEquals(centipawns[i], evaluations.get(i).getCentipawns());
+        }
+    }
+
+    @Test
+    public void testMovesAreJudgedForTheSideThatPlayedThem() throws Exception {
+        List<PlyEvaluation> evaluations = analyze();
+
+        // White gains with e4; Black's e5 hands White three pawns; Nf3 gives back most of it;
+        // Nc6 walks into mate
+        assertEquals(MoveClassification.GOOD, evaluations.get(0).getClassification());
+        assertEquals(MoveClassification.BLUNDER, evaluations.get(1).getClassification());
+        assertEquals(MoveClassification.MISTAKE, evaluations.get(2).getClassification());
+        assertEquals(MoveClassification.BLUNDER, evaluations.get(3).getClassification());
+    }
+
+    private static List<PlyEvaluation> analyze() throws InterruptedException {
+        MoveList moves = MoveCodec.decode(MoveCodec.encodePgn(PGN));
+        return new GameAnalysisService(new ScriptedBackend()).analyzeGame(moves, 10, null);
+    }
+
+    /**
+     * Plies played since the standard start, read from the FEN's side to move and move number.
+     */
+    private static int plyOf(String fen) {
+        String[] fields = fen.split(" ");
+        return 2 * (Integer.parseInt(fields[5]) - 1) + (fields[1].equals("b") ? 1 : 0);
+    }
+}
@@ -0,0 +1,57 @@
+package com.chesslog.service;
+
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MoveCodecTest {
+
+    // Covers en passant (5. exf6) and castling (7. O-O)
+    private static final String PGN = "[Event \"Test\"]\n\n"
+            + "1. e4 d5 2. e5 Nc6 3. Nf3 Bg4 4. Be2 e6 5. d4 f5 6. exf6 Nxf6 7. O-O Bd6 *";
+
+    @Test
+    public void testRoundTripsPgn() {
+        byte[] encoded = MoveCodec.encodePgn(PGN);
+        assertNotNull(encoded);
+        assertEquals(2 + 2 * 14, encoded.length);
+
+        MoveList moves = MoveCodec.decode(encoded);
+
+        assertNotNull(moves);
+        assertEquals(14, moves.size());
+        assertEquals("e5f6", moves.get(10).toString());
+        assertEquals("e1g1", moves.get(12).toString());
+    }
+
+    @Test
+    public void testRoundTripsPromotionFromCustomStart() {
+        String fen = "4k3/P7/8/8/8/8/1p6/4K3 w - - 0 1";
+        List<Move> original = List.of(
+                new Move(Square.A7, Square.A8, Piece.WHITE_KNIGHT),
+                new Move(Square.B2, Square.B1, Piece.BLACK_QUEEN));
+
+        MoveList moves = MoveCodec.decode(MoveCodec.encode(fen, original));
+
+        assertNotNull(moves);
+        assertEquals(fen, moves.getStartFen());
+        assertEquals(Piece.WHITE_KNIGHT, moves.get(0).getPromotion());
+        assertEquals(Piece.BLACK_QUEEN, moves.get(1).getPromotion());
+    }
+
+    @Test
+    public void testRejectsMalformedData() {
+        assertNull(MoveCodec.decode(null));
+        assertNull(MoveCodec.decode(new byte[]{9, 0}));
+        assertNull(MoveCodec.decode(new byte[]{1, 0, 0}));
+        assertNull(MoveCodec.encodePgn(""));
+    }
+}
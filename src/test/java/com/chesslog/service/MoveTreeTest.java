@@ -0,0 +1,101 @@
+package com.chesslog.service;
+
+import com.chesslog.model.ExplorerMove;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MoveTreeTest {
+
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private Connection conn;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE games (pgn_id TEXT PRIMARY KEY, moves BLOB, pgn TEXT, result TEXT, white_elo INTEGER, black_elo INTEGER)");
+            stmt.execute(MoveTree.CREATE_TABLE_SQL);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    public void testCountsEachMoveWithItsResults() throws Exception {
+        insertGame("a", "1. e4 e5 2. Nf3 *", "1-0", 1500, 1400);
+        insertGame("b", "1. e4 c5 *", "1/2-1/2", 1700, 1600);
+        insertGame("c", "1. d4 d5 *", "0-1", 0, 1800);
+        addGames("a", "b", "c");
+
+        List<ExplorerMove> moves = MoveTree.lookup(conn, ZobristHasher.DEFAULT.hash(START_FEN));
+
+        assertEquals(2, moves.size());
+        ExplorerMove e4 = moves.get(0);
+        assertEquals("e2e4", e4.getMove());
+        assertEquals(2, e4.getGames());
+        assertEquals(1, e4.getWhiteWins());
+        assertEquals(1, e4.getDraws());
+        assertEquals(1600, e4.getAverageElo());
+        assertEquals(0, moves.get(1).getAverageElo());
+    }
+
+    @Test
+    public void testRemovingLastGameDropsItsMoves() throws Exception {
+        insertGame("a", "1. e4 e5 *", "1-0", 1500, 1400);
+        addGames("a");
+
+        MoveTree.Changes changes = new MoveTree.Changes();
+        changes.remove(MoveTree.read(conn, "a"));
+        changes.apply(conn);
+
+        assertTrue(MoveTree.lookup(conn, ZobristHasher.DEFAULT.hash(START_FEN)).isEmpty());
+    }
+
+    @Test
+    public void testRebuildMatchesIncrementalUpdates() throws Exception {
+        insertGame("a", "1. e4 e5 *", "1-0", 1500, 1400);
+        insertGame("b", "1. e4 e6 *", "0-1", 1500, 1400);
+
+        MoveTree.rebuild(conn);
+
+        List<ExplorerMove> moves = MoveTree.lookup(conn, ZobristHasher.DEFAULT.hash(START_FEN));
+        assertEquals(1, moves.size());
+        assertEquals(2, moves.get(0).getGames());
+        assertEquals(50, moves.get(0).getWhitePercent());
+    }
+
+    private void insertGame(String id, String movetext, String result, int whiteElo, int blackElo) throws Exception {
+        String pgn = "[Result \"" + result + "\"]\n\n" + movetext;
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO games VALUES (?, ?, ?, ?, ?, ?)")) {
+            pstmt.setString(1, id);
+            pstmt.setBytes(2, MoveCodec.encodePgn(pgn));
+            pstmt.setString(3, pgn);
+            pstmt.setString(4, result);
+            pstmt.setInt(5, whiteElo);
+            pstmt.setInt(6, blackElo);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private void addGames(String... ids) throws Exception {
+        MoveTree.Changes changes = new MoveTree.Changes();
+        for (String id : ids) {
+            changes.add(MoveTree.read(conn, id));
+        }
+        changes.apply(conn);
+    }
+}
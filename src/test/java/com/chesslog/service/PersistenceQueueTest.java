@@ -0,0 +1,148 @@
+package com.chesslog.service;
+
+import com.chesslog.model.ChessGame;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PersistenceQueueTest {
+
+    /**
+     * Records writes instead of touching SQLite; writes of "blocker" wait until released.
+     */
+    private static class RecordingDatabase extends DatabaseService {
+        final List<String> writes = new CopyOnWriteArrayList<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void saveGame(ChessGame game, String username) {
+            if (game.getUrl().equals("blocker")) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            writes.add("save " + game.getUrl() + " " + game.getPgn());
+        }
+
+        @Override
+        public void deleteGame(String url) {
+            writes.add("delete " + url);
+        }
+
+        @Override
+        public boolean isGameSaved(String url) {
+            return false;
+        }
+    }
+
+    @Test
+    public void testCoalescesWritesWaitingForTheSameGame() throws Exception {
+        RecordingDatabase database = new RecordingDatabase();
+        PersistenceQueue queue = new PersistenceQueue(database, Runnable::run);
+        try {
+            queue.saveGame(game("blocker", "1. e4"), "user");
+            assertTrue(database.started.await(5, TimeUnit.SECONDS));
+
+            CompletableFuture<Void> first = queue.saveGame(game("a", "1. d4"), "user");
+            CompletableFuture<Void> second = queue.saveGame(game("a", "1. c4"), "user");
+            database.release.countDown();
+
+            second.get(5, TimeUnit.SECONDS);
+            first.get(5, TimeUnit.SECONDS);
+            assertEquals(List.of("save blocker 1. e4", "save a 1. c4"), database.writes);
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testDeleteSupersedesQueuedSave() throws Exception {
+        RecordingDatabase database = new RecordingDatabase();
+        PersistenceQueue queue = new PersistenceQueue(database, Runnable::run);
+        try {
+            queue.saveGame(game("blocker", "1. e4"), "user");
+            assertTrue(database.started.await(5, TimeUnit.SECONDS));
+
+            CompletableFuture<Void> save = queue.saveGame(game("a", "1. d4"), "user");
+            CompletableFuture<Void> delete = queue.deleteGame("a");
+            database.release.countDown();
+
+            delete.get(5, TimeUnit.SECONDS);
+            ExecutionException error = assertThrows(ExecutionException.class, () -> save.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(PersistenceQueue.SupersededException.class, error.getCause());
+            assertEquals(List.of("save blocker 1. e4", "delete a"), database.writes);
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testQueuedWritesAnswerIsGameSaved() throws Exception {
+        RecordingDatabase database = new RecordingDatabase();
+        PersistenceQueue queue = new PersistenceQueue(database, Runnable::run);
+        try {
+            queue.saveGame(game("blocker", "1. e4"), "user");
+            assertTrue(database.started.await(5, TimeUnit.SECONDS));
+
+            queue.saveGame(game("a", "1. d4"), "user");
+            assertTrue(queue.isGameSaved("a").get(5, TimeUnit.SECONDS));
+            queue.deleteGame("a");
+            assertFalse(queue.isGameSaved("a").get(5, TimeUnit.SECONDS));
+        } finally {
+            database.release.countDown();
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testRejectsWritesBeyondCapacity() throws Exception {
+        RecordingDatabase database = new RecordingDatabase();
+        PersistenceQueue queue = new PersistenceQueue(database, Runnable::run, 1);
+        try {
+            queue.saveGame(game("blocker", "1. e4"), "user");
+            assertTrue(database.started.await(5, TimeUnit.SECONDS));
+
+            queue.saveGame(game("a", "1. d4"), "user");
+            CompletableFuture<Void> rejected = queue.saveGame(game("b", "1. d4"), "user");
+
+            assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        } finally {
+            database.release.countDown();
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testCloseFinishesQueuedWrites() throws Exception {
+        RecordingDatabase database = new RecordingDatabase();
+        PersistenceQueue queue = new PersistenceQueue(database, Runnable::run);
+        queue.deleteGame("a");
+        queue.deleteGame("b");
+
+        queue.close();
+
+        assertEquals(List.of("delete a", "delete b"), database.writes);
+    }
+
+    private static ChessGame game(String url, String pgn) {
+        ChessGame game = new ChessGame();
+        game.url = url;
+        game.pgn = pgn;
+        return game;
+    }
+}
@@ -0,0 +1,56 @@
+package com.chesslog.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PgnHeaderScannerTest {
+
+    private static final String PGN = """
+            [Event "Live Chess"]
+            [Site "Chess.com"]
+            [White "alice"]
+            [Black "bob"]
+            [Result "1-0"]
+            [WhiteElo "1500"]
+
+            1. e4 e5 2. Nf3 {[%clk 0:09:58]} Nc6 1-0
+            """;
+
+    @Test
+    public void testReadsAllTags() {
+        Map<String, String> tags = PgnHeaderScanner.scan(PGN);
+
+        assertEquals(6, tags.size());
+        assertEquals("Live Chess", tags.get("Event"));
+        assertEquals("alice", tags.get("White"));
+        assertEquals("1-0", tags.get("Result"));
+        assertEquals("1500", tags.get("WhiteElo"));
+    }
+
+    @Test
+    public void testStopsAtMovetext() {
+        Map<String, String> tags = PgnHeaderScanner.scan("[White \"a\"]\n1. e4 [Black \"b\"]");
+
+        assertEquals("a", tags.get("White"));
+        assertFalse(tags.containsKey("Black"));
+    }
+
+    @Test
+    public void testUnescapesValuesAndKeepsFirstDuplicate() {
+        Map<String, String> tags = PgnHeaderScanner.scan("[Event \"The \\\"Open\\\"\"]\n[Event \"Other\"]\n[Round \"\"]");
+
+        assertEquals("The \"Open\"", tags.get("Event"));
+        assertEquals("", tags.get("Round"));
+    }
+
+    @Test
+    public void testNullOrEmpty() {
+        assertTrue(PgnHeaderScanner.scan(null).isEmpty());
+        assertTrue(PgnHeaderScanner.scan("").isEmpty());
+    }
+}
@@ -0,0 +1,76 @@
+package com.chesslog.service;
+
+import com.chesslog.model.BookMove;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PolyglotBookTest {
+
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String CASTLING_FEN = "r1bqkbnr/pppp1ppp/2n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4";
+
+    private final ZobristHasher hasher = ZobristHasher.DEFAULT;
+
+    @Test
+    public void testLookupReturnsMovesByWeight() throws IOException {
+        try (PolyglotBook book = PolyglotBook.open(writeBook(), hasher)) {
+            List<BookMove> moves = book.lookup(START_FEN);
+            assertEquals(2, moves.size());
+            assertEquals("d2d4", moves.get(0).getMove());
+            assertEquals(20, moves.get(0).getWeight());
+            assertEquals("e2e4", moves.get(1).getMove());
+        }
+    }
+
+    @Test
+    public void testCastlingIsDecodedAsKingMove() throws IOException {
+        try (PolyglotBook book = PolyglotBook.open(writeBook(), hasher)) {
+            assertEquals("e1g1", book.lookup(CASTLING_FEN).get(0).getMove());
+        }
+    }
+
+    @Test
+    public void testUnknownPositionIsOutOfBook() throws IOException {
+        try (PolyglotBook book = PolyglotBook.open(writeBook(), hasher)) {
+            String fen = "rnbqkbnr/pppppppp/8/8/8/5N2/PPPPPPPP/RNBQKB1R b KQkq - 1 1";
+            assertFalse(book.contains(fen));
+            assertTrue(book.lookup(fen).isEmpty());
+            assertTrue(book.contains(START_FEN));
+        }
+    }
+
+    private Path writeBook() throws IOException {
+        List<long[]> entries = new ArrayList<>();
+        entries.add(new long[]{hasher.hash(START_FEN), encode(4, 1, 4, 3), 10});
+        entries.add(new long[]{hasher.hash(START_FEN), encode(3, 1, 3, 3), 20});
+        // Polyglot writes O-O as e1h1
+        entries.add(new long[]{hasher.hash(CASTLING_FEN), encode(4, 0, 7, 0), 5});
+        for (long i = 1; i <= 50; i++) {
+            entries.add(new long[]{i * 0x9E3779B97F4A7C15L, encode(6, 0, 5, 2), 1});
+        }
+        entries.sort((a, b) -> Long.compareUnsigned(a[0], b[0]));
+
+        ByteBuffer buffer = ByteBuffer.allocate(entries.size() * 16);
+        for (long[] entry : entries) {
+            buffer.putLong(entry[0]).putShort((short) entry[1]).putShort((short) entry[2]).putInt(0);
+        }
+        Path file = Files.createTempFile("book", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, buffer.array());
+        return file;
+    }
+
+    private static long encode(int fromFile, int fromRank, int toFile, int toRank) {
+        return toFile | (toRank << 3) | (fromFile << 6) | (fromRank << 9);
+    }
+}
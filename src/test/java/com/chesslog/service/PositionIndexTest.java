@@ -0,0 +1,66 @@
+package com.chesslog.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PositionIndexTest {
+
+    // Both games reach the position after 1. d4 d5 2. Nf3, by different move orders
+    private static final String QUEENS_PAWN = "[Event \"A\"]\n\n1. d4 d5 2. Nf3 Nf6 *";
+    private static final String RETI = "[Event \"B\"]\n\n1. Nf3 d5 2. d4 e6 *";
+    private static final String TRANSPOSED_FEN = "rnbqkbnr/ppp1pppp/8/3p4/3P4/5N2/PPP1PPPP/RNBQKB1R b KQkq - 1 2";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testFindsTranspositions() {
+        PositionIndex index = PositionIndex.open(dir.resolve("positions.idx"), ZobristHasher.DEFAULT);
+        index.putGame(1, QUEENS_PAWN);
+        index.putGame(2, RETI);
+
+        List<PositionIndex.Posting> postings = index.lookup(TRANSPOSED_FEN);
+
+        assertEquals(2, postings.size());
+        assertTrue(postings.stream().allMatch(posting -> posting.getPly() == 3));
+    }
+
+    @Test
+    public void testCompactedFileSurvivesReopen() throws Exception {
+        Path file = dir.resolve("positions.idx");
+        PositionIndex index = PositionIndex.open(file, ZobristHasher.DEFAULT);
+        index.putGames(Map.of(1L, QUEENS_PAWN, 2L, RETI));
+        index.compact(2, 3);
+        index.removeGame(1);
+        assertEquals(1, index.lookup(TRANSPOSED_FEN).size());
+        index.close();
+
+        PositionIndex reopened = PositionIndex.open(file, ZobristHasher.DEFAULT);
+        assertTrue(reopened.matches(2, 3));
+        assertFalse(reopened.matches(1, 2));
+        assertEquals(2, reopened.lookup(TRANSPOSED_FEN).size());
+        assertEquals(0, reopened.getPendingGameCount());
+        reopened.close();
+    }
+
+    @Test
+    public void testRebuildReplacesFile() throws Exception {
+        PositionIndex index = PositionIndex.open(dir.resolve("positions.idx"), ZobristHasher.DEFAULT);
+        index.rebuild(consumer -> {
+            consumer.accept(QUEENS_PAWN, 1);
+            consumer.accept(RETI, 2);
+        }, 2, 3);
+
+        assertEquals(2, index.lookup(TRANSPOSED_FEN).size());
+        assertEquals(1, index.lookup("rnbqkbnr/ppp2ppp/4p3/3p4/3P4/5N2/PPP1PPPP/RNBQKB1R w KQkq - 0 3").size());
+        index.close();
+    }
+}
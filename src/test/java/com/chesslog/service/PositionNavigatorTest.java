@@ -0,0 +1,61 @@
+package com.chesslog.service;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PositionNavigatorTest {
+
+    private static final String PGN = "[Event \"Test\"]\n\n"
+            + "1. e4 c5 2. Nf3 d6 3. d4 cxd4 4. Nxd4 Nf6 5. Nc3 a6 6. Be3 e5 7. Nb3 Be6 8. f3 Be7 "
+            + "9. Qd2 O-O 10. O-O-O Nbd7 11. g4 b5 12. g5 b4 13. Ne2 Ne8 14. f4 a5 15. f5 a4 *";
+
+    @Test
+    public void testMatchesReplayingFromTheStart() {
+        MoveList moves = MoveCodec.decode(MoveCodec.encodePgn(PGN));
+        Board board = new Board();
+        PositionNavigator navigator = new PositionNavigator(board, moves.getStartFen(), moves, 4);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            // Mix single steps, which undo or play one move, with random jumps
+            int target = i % 3 == 0
+                    ? random.nextInt(moves.size() + 1) - 1
+                    : Math.max(-1, Math.min(moves.size() - 1, navigator.getCurrentIndex() + (random.nextBoolean() ? 1 : -1)));
+            navigator.goTo(target);
+            assertEquals(replayed(moves, target), board.getFen(), "after going to " + target);
+        }
+    }
+
+    @Test
+    public void testTruncateDropsKeyframesOfTheOldLine() {
+        MoveList moves = MoveCodec.decode(MoveCodec.encodePgn(PGN));
+        MoveList branch = MoveCodec.decode(MoveCodec.encodePgn("[Event \"Test\"]\n\n1. e4 c5 2. Nf3 d6 3. c3 Nf6 *"));
+        Board board = new Board();
+        PositionNavigator navigator = new PositionNavigator(board, moves.getStartFen(), moves, 4);
+        navigator.goTo(moves.size() - 1);
+
+        navigator.goTo(3);
+        moves.subList(4, moves.size()).clear();
+        navigator.truncate(3);
+        moves.addAll(branch.subList(4, branch.size()));
+        navigator.goTo(moves.size() - 1);
+        navigator.goTo(0);
+        navigator.goTo(moves.size() - 1);
+
+        assertEquals(replayed(branch, branch.size() - 1), board.getFen());
+    }
+
+    private static String replayed(MoveList moves, int index) {
+        Board board = new Board();
+        board.loadFromFen(moves.getStartFen());
+        for (int i = 0; i <= index; i++) {
+            board.doMove(moves.get(i));
+        }
+        return board.getFen();
+    }
+}
@@ -0,0 +1,89 @@
+package com.chesslog.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SqliteConnectionPoolTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testClosingReturnsConnectionToPool() throws Exception {
+        SqliteConnectionPool pool = new SqliteConnectionPool("test", url(), 1, false);
+        try {
+            try (Connection conn = pool.lease(); Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE t (v INTEGER)");
+            }
+            try (Connection conn = pool.lease();
+                 PreparedStatement insert = conn.prepareStatement("INSERT INTO t (v) VALUES (?)")) {
+                insert.setInt(1, 7);
+                insert.executeUpdate();
+            }
+            try (Connection conn = pool.lease();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA journal_mode")) {
+                assertTrue(rs.next());
+                assertEquals("wal", rs.getString(1).toLowerCase());
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testUncommittedWorkIsRolledBackOnRelease() throws Exception {
+        SqliteConnectionPool pool = new SqliteConnectionPool("test", url(), 1, false);
+        try {
+            try (Connection conn = pool.lease(); Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE t (v INTEGER)");
+            }
+            try (Connection conn = pool.lease(); Statement stmt = conn.createStatement()) {
+                conn.setAutoCommit(false);
+                stmt.executeUpdate("INSERT INTO t (v) VALUES (1)");
+            }
+            try (Connection conn = pool.lease();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM t")) {
+                assertTrue(conn.getAutoCommit());
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testReadOnlyPoolRefusesWrites() throws Exception {
+        SqliteConnectionPool writer = new SqliteConnectionPool("writer", url(), 1, false);
+        SqliteConnectionPool readers = new SqliteConnectionPool("reader", url(), 2, true);
+        try {
+            try (Connection conn = writer.lease(); Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE t (v INTEGER)");
+            }
+            try (Connection conn = readers.lease(); Statement stmt = conn.createStatement()) {
+                assertThrows(SQLException.class, () -> stmt.executeUpdate("INSERT INTO t (v) VALUES (1)"));
+            }
+        } finally {
+            readers.close();
+            writer.close();
+        }
+        assertThrows(SQLException.class, writer::lease);
+    }
+
+    private String url() {
+        return "jdbc:sqlite:" + dir.resolve("test.db");
+    }
+}
@@ -0,0 +1,68 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StockfishApiServiceTest {
+
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final String SUCCESS_BODY =
+            "{\"success\":true,\"evaluation\":0.3,\"mate\":null,\"bestmove\":\"bestmove e2e4 ponder e7e5\",\"continuation\":\"e2e4 e7e5 g1f3\"}";
+
+    private MockWebServer server;
+    private StockfishApiService service;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        service = new StockfishApiService(server.url("/api/s/v2.php").toString(), new TokenBucket(1000, 100), 10);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        service.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testParsesSuccessfulResponse() throws Exception {
+        server.enqueue(new MockResponse.Builder().code(200).body(SUCCESS_BODY).build());
+
+        List<AnalysisLine> lines = service.getAnalysisLines(START_FEN, 20);
+
+        assertEquals(1, lines.size());
+        assertEquals("e2e4", lines.get(0).getBestMove());
+        assertEquals(15, lines.get(0).getDepth());
+        assertEquals("15", server.takeRequest().getRequestUrl().queryParameter("depth"));
+    }
+
+    @Test
+    public void testRetriesServerErrors() {
+        server.enqueue(new MockResponse.Builder().code(503).build());
+        server.enqueue(new MockResponse.Builder().code(429).build());
+        server.enqueue(new MockResponse.Builder().code(200).body(SUCCESS_BODY).build());
+
+        List<AnalysisLine> lines = service.getAnalysisLines(START_FEN, 15);
+
+        assertEquals(1, lines.size());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() {
+        server.enqueue(new MockResponse.Builder().code(400).build());
+
+        assertTrue(service.getAnalysisLines(START_FEN, 15).isEmpty());
+        assertEquals(1, server.getRequestCount());
+    }
+}
@@ -0,0 +1,27 @@
+package com.chesslog.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ThroughputMeterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void testRateOverWindow() {
+        ThroughputMeter meter = new ThroughputMeter(10_000);
+        for (int i = 0; i <= 10; i++) {
+            meter.record(i * SECOND / 2);
+        }
+        assertEquals(2.0, meter.getRatePerSecond(5 * SECOND), 0.001);
+    }
+
+    @Test
+    public void testOldEventsLeaveTheWindow() {
+        ThroughputMeter meter = new ThroughputMeter(10_000);
+        meter.record(0);
+        meter.record(SECOND);
+        assertEquals(0.0, meter.getRatePerSecond(20 * SECOND), 0.001);
+    }
+}
@@ -0,0 +1,33 @@
+package com.chesslog.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private long now = 0;
+
+    @Test
+    public void testBurstThenWait() {
+        TokenBucket bucket = new TokenBucket(2, 3, () -> now);
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(SECOND / 2, bucket.reserve());
+        assertEquals(SECOND, bucket.reserve());
+    }
+
+    @Test
+    public void testRefillIsCappedAtCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 2, () -> now);
+        bucket.reserve();
+        bucket.reserve();
+        now += 60 * SECOND;
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(SECOND / 2, bucket.reserve());
+    }
+}
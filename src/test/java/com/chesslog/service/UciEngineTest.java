@@ -0,0 +1,55 @@
+package com.chesslog.service;
+
+import com.chesslog.model.AnalysisLine;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UciEngineTest {
+
+    @Test
+    public void testCentipawnScoreIsReportedFromWhitesPointOfView() {
+        String info = "info depth 18 seldepth 24 multipv 1 score cp 35 nodes 123456 nps 1000000 time 120 pv e2e4 e7e5 g1f3";
+
+        AnalysisLine whiteToMove = UciEngine.parseInfoLine(info, false);
+        assertEquals("0.35", whiteToMove.getEvaluation());
+        assertEquals("e2e4", whiteToMove.getBestMove());
+        assertEquals("e2e4 e7e5 g1f3", whiteToMove.getContinuation());
+        assertEquals(18, whiteToMove.getDepth());
+        assertFalse(whiteToMove.isMate());
+
+        AnalysisLine blackToMove = UciEngine.parseInfoLine(info, true);
+        assertEquals("-0.35", blackToMove.getEvaluation());
+    }
+
+    @Test
+    public void testMateScore() {
+        AnalysisLine line = UciEngine.parseInfoLine("info depth 5 score mate 2 pv d8h4 g2g3 h4g3", true);
+        assertTrue(line.isMate());
+        assertEquals("-2", line.getEvaluation());
+    }
+
+    @Test
+    public void testMultiPvRank() {
+        AnalysisLine first = UciEngine.parseInfoLine("info depth 12 multipv 1 score cp 20 pv d2d4", false);
+        AnalysisLine third = UciEngine.parseInfoLine("info depth 12 multipv 3 score cp -5 pv g1f3 d7d5", false);
+        assertEquals(1, first.getRank());
+        assertEquals(3, third.getRank());
+        assertEquals("-0.05", third.getEvaluation());
+    }
+
+    @Test
+    public void testInfoWithoutPvIsIgnored() {
+        assertNull(UciEngine.parseInfoLine("info depth 1 currmove e2e4 currmovenumber 1", false));
+        assertNull(UciEngine.parseInfoLine("info string NNUE evaluation using nn-1111cefa1111.nnue", false));
+    }
+
+    @Test
+    public void testSideToMoveFromFen() {
+        assertFalse(UciEngine.isBlackToMove("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"));
+        assertTrue(UciEngine.isBlackToMove("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1"));
+    }
+}
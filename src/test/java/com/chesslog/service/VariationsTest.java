@@ -0,0 +1,112 @@
+package com.chesslog.service;
+
+import com.chesslog.model.ChessGame;
+import com.github.bhlangonijr.chesslib.move.MoveList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VariationsTest {
+
+    private static final String PARENT_PGN = "[Event \"Game\"]\n[Result \"1-0\"]\n\n1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 1-0";
+    private static final String BRANCH_PGN = "[Event \"Game\"]\n[Result \"*\"]\n\n1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5 *";
+
+    @TempDir
+    Path dir;
+
+    private Connection conn;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE games (pgn_id TEXT PRIMARY KEY, moves BLOB, pgn TEXT, parent_id TEXT, branch_ply INTEGER)");
+        }
+        insert("parent", PARENT_PGN, null, 0);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    public void testStoresOnlyMovesAfterTheBranch() throws Exception {
+        ChessGame stored = Variations.asStored(conn, game("child", BRANCH_PGN, "parent"));
+
+        assertEquals("parent", stored.parentId);
+        assertEquals(4, stored.branchPly);
+        assertTrue(stored.getPgn().contains("[FEN \"r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3\"]"));
+        assertTrue(stored.getPgn().contains("3. Bc4 Bc5"));
+        assertFalse(stored.getPgn().contains("Nf3"));
+    }
+
+    @Test
+    public void testResolvesFullLineThroughParent() throws Exception {
+        ChessGame stored = Variations.asStored(conn, game("child", BRANCH_PGN, "parent"));
+        insert("child", stored.getPgn(), "parent", stored.branchPly);
+
+        MoveList line = Variations.resolve(conn, "child");
+
+        assertNotNull(line);
+        assertEquals(6, line.size());
+        assertEquals("f1c4", MoveTree.toUci(line.get(4)));
+    }
+
+    @Test
+    public void testIndexedFromPositionsBeforeTheBranch() throws Exception {
+        ChessGame stored = Variations.asStored(conn, game("child", BRANCH_PGN, "parent"));
+        insert("child", stored.getPgn(), "parent", stored.branchPly);
+        PositionIndex index = PositionIndex.open(dir.resolve("positions.idx"), ZobristHasher.DEFAULT);
+        index.putGame(2, Variations.fullPgn(conn, "child", stored.getPgn(), "parent"));
+
+        // After 1. e4 e5, before the variation leaves its parent at ply 4
+        List<PositionIndex.Posting> postings =
+                index.lookup("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2");
+
+        assertEquals(1, postings.size());
+        assertEquals(2, postings.get(0).getPly());
+        index.close();
+    }
+
+    @Test
+    public void testUnsavedParentIsStoredInFull() throws Exception {
+        ChessGame stored = Variations.asStored(conn, game("child", BRANCH_PGN, "missing"));
+
+        assertNull(stored.parentId);
+        assertEquals(BRANCH_PGN, stored.getPgn());
+    }
+
+    private void insert(String id, String pgn, String parentId, int branchPly) throws Exception {
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO games VALUES (?, ?, ?, ?, ?)")) {
+            pstmt.setString(1, id);
+            pstmt.setBytes(2, MoveCodec.encodePgn(pgn));
+            pstmt.setString(3, pgn);
+            pstmt.setString(4, parentId);
+            pstmt.setInt(5, branchPly);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static ChessGame game(String url, String pgn, String parentId) {
+        ChessGame game = new ChessGame();
+        game.url = url;
+        game.pgn = pgn;
+        game.parentId = parentId;
+        return game;
+    }
+}
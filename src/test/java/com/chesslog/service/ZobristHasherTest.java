@@ -0,0 +1,63 @@
+package com.chesslog.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ZobristHasherTest {
+
+    private final ZobristHasher hasher = ZobristHasher.DEFAULT;
+
+    @Test
+    public void testMoveCountersAreIgnored() {
+        assertEquals(
+                hasher.hash("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3"),
+                hasher.hash("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 14 27"));
+    }
+
+    @Test
+    public void testSideToMoveAndCastlingChangeTheKey() {
+        String white = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+        String black = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR b KQkq - 0 1";
+        String noCastling = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1";
+        assertNotEquals(hasher.hash(white), hasher.hash(black));
+        assertNotEquals(hasher.hash(white), hasher.hash(noCastling));
+    }
+
+    @Test
+    public void testEnPassantOnlyCountsWhenCapturable() {
+        // After 1. e4 no black pawn can take on e3
+        assertEquals(
+                hasher.hash("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1"),
+                hasher.hash("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1"));
+        // A white pawn on e5 can take a pawn that just arrived on d5
+        assertNotEquals(
+                hasher.hash("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 3"),
+                hasher.hash("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq - 0 3"));
+    }
+
+    @Test
+    public void testPolyglotKeysMatchTheBookFormat() {
+        assertTrue(ZobristHasher.polyglot().isPresent());
+        ZobristHasher polyglot = ZobristHasher.polyglot().get();
+
+        // Reference keys from the Polyglot book format specification
+        assertEquals(0x463b96181691fc9cL,
+                polyglot.hash("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"));
+        assertEquals(0x823c9b50fd114196L,
+                polyglot.hash("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1"));
+        assertEquals(0x0756b94461c50fb0L,
+                polyglot.hash("rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2"));
+        assertEquals(0x662fafb965db29d4L,
+                polyglot.hash("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2"));
+        // 1. e4 d5 2. e5 f5: the e5 pawn can take en passant on f6
+        assertEquals(0x22a48b5a8e47ff78L,
+                polyglot.hash("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3"));
+        assertEquals(0x652a607ca3f242c1L,
+                polyglot.hash("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 3"));
+        assertEquals(0x00fdd303c946bdd9L,
+                polyglot.hash("rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4"));
+    }
+}